@@ -0,0 +1,85 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.world.World;
+
+public class MagnetBlocksClient implements ClientModInitializer {
+    // Phantom magnets near the player, kept up to date by the server
+    private static final Int2ObjectOpenHashMap<PhantomMagnetManager.PhantomMagnet> phantoms = new Int2ObjectOpenHashMap<>();
+
+    @Override
+    public void onInitializeClient() {
+        ClientPlayNetworking.registerGlobalReceiver(MagnetNetworking.FIELD_TRAILS, (client, handler, buf, responseSender) -> {
+            int count = buf.readVarInt();
+            float[] trails = new float[count * 6];
+            byte[] flags = new byte[count];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < 6; j++) trails[i * 6 + j] = buf.readFloat();
+                flags[i] = buf.readByte();
+            }
+            client.execute(() -> {
+                if (client.world != null) spawnTrails(client.world, trails, flags);
+            });
+        });
+        ClientPlayNetworking.registerGlobalReceiver(MagnetNetworking.PHANTOM_MAGNETS, (client, handler, buf, responseSender) -> {
+            RegistryKey<World> dimension = buf.readRegistryKey(RegistryKeys.WORLD);
+            boolean reset = buf.readBoolean();
+            int[] removed = new int[buf.readVarInt()];
+            for (int i = 0; i < removed.length; i++) removed[i] = buf.readVarInt();
+            int count = buf.readVarInt();
+            Int2ObjectOpenHashMap<PhantomMagnetManager.PhantomMagnet> updated = new Int2ObjectOpenHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = buf.readVarInt();
+                updated.put(id, new PhantomMagnetManager.PhantomMagnet(dimension, buf.readBlockPos(), buf.readDouble(), buf.readDouble(), buf.readBoolean()));
+            }
+            client.execute(() -> {
+                if (reset) phantoms.clear();
+                for (int id : removed) phantoms.remove(id);
+                phantoms.putAll(updated);
+            });
+        });
+        ClientPlayNetworking.registerGlobalReceiver(MagnetNetworking.PREDICTION_SESSION, (client, handler, buf, responseSender) -> {
+            int session = buf.readVarInt();
+            double strength = buf.readDouble();
+            client.execute(() -> MagnetFieldPredictor.onSession(session, strength));
+        });
+        ClientPlayNetworking.registerGlobalReceiver(MagnetNetworking.PREDICTION_CORRECTION, (client, handler, buf, responseSender) -> {
+            int session = buf.readVarInt();
+            double dx = buf.readDouble(), dy = buf.readDouble(), dz = buf.readDouble();
+            client.execute(() -> MagnetFieldPredictor.onCorrection(client, session, dx, dy, dz));
+        });
+        ClientTickEvents.START_CLIENT_TICK.register(MagnetFieldPredictor::tick);
+        ClientTickEvents.END_CLIENT_TICK.register(MagnetHumManager::tick);
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> client.execute(() -> {
+            phantoms.clear();
+            MagnetHumManager.clear();
+            MagnetFieldPredictor.clear();
+        }));
+    }
+
+    public static Int2ObjectMap<PhantomMagnetManager.PhantomMagnet> getPhantoms() {
+        return phantoms;
+    }
+
+    private static void spawnTrails(ClientWorld world, float[] trails, byte[] flags) {
+        for (int i = 0; i < flags.length; i++) {
+            boolean attracting = (flags[i] & MagneticFieldSnapshot.FLAG_ATTRACTING) != 0;
+            boolean phantom = (flags[i] & MagneticFieldSnapshot.FLAG_PHANTOM) != 0;
+            ParticleEffect particle;
+            if (attracting) particle = phantom ? ParticleTypes.SOUL_FIRE_FLAME : ParticleTypes.ELECTRIC_SPARK;
+            else particle = phantom ? ParticleTypes.REVERSE_PORTAL : ParticleTypes.SOUL_FIRE_FLAME;
+            int offset = i * 6;
+            world.addParticle(particle, trails[offset], trails[offset + 1], trails[offset + 2], trails[offset + 3] * 0.1, trails[offset + 4] * 0.1, trails[offset + 5] * 0.1);
+        }
+    }
+}
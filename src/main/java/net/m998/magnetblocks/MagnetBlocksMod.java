@@ -1,25 +1,52 @@
-package net.m998.magnetblocks;
-
-import net.fabricmc.api.ModInitializer;
-import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
-import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
-
-public class MagnetBlocksMod implements ModInitializer {
-    public static final String MOD_ID = "magnetblocks";
-
-    @Override
-    public void onInitialize() {
-        ModBlocks.register();
-        ModBlockEntities.register();
-        ModItems.register();
-        ServerTickEvents.END_WORLD_TICK.register(MagnetBlock::tickPropagation);
-        ServerTickEvents.START_SERVER_TICK.register(server -> {
-            MagneticStormManager stormManager = MagneticStormManager.get(server);
-            stormManager.tick(server);
-            MagnetWhitelistManager.get(server);
-            PhantomMagnetManager phantomManager = PhantomMagnetManager.get(server);
-            if (!phantomManager.getMagnets().isEmpty()) {for (var world : server.getWorlds()) {MagnetBlockEntity.processAllPhantomMagnets(world);}}});
-        ServerTickEvents.START_SERVER_TICK.register(server -> {if (server.getTicks() % 1200 == 0) {MagnetBlockEntity.cleanupAchievementData();}});
-        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> MagnetCommands.register(dispatcher));
-    }
-}
+package net.m998.magnetblocks;
+
+import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.entity.event.v1.ServerEntityWorldChangeEvents;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.S2CPlayChannelEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MagnetBlocksMod implements ModInitializer {
+    public static final String MOD_ID = "magnetblocks";
+    public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    @Override
+    public void onInitialize() {
+        ModBlocks.register();
+        ModBlockEntities.register();
+        ModItems.register();
+        ServerTickEvents.END_WORLD_TICK.register(MagnetNetworks::tick);
+        ServerTickEvents.END_WORLD_TICK.register(MagneticFieldEngine::tick);
+        ServerChunkEvents.CHUNK_LOAD.register(MagnetEmitterRegistry::onChunkLoad);
+        ServerChunkEvents.CHUNK_UNLOAD.register(MagnetEmitterRegistry::onChunkUnload);
+        ServerChunkEvents.CHUNK_LOAD.register(MagnetNetworks::onChunkLoad);
+        ServerChunkEvents.CHUNK_UNLOAD.register(MagnetNetworks::onChunkUnload);
+        ServerChunkEvents.CHUNK_LOAD.register(PhantomMagnetManager::onChunkLoad);
+        ServerChunkEvents.CHUNK_UNLOAD.register(PhantomMagnetManager::onChunkUnload);
+        ServerEntityEvents.EQUIPMENT_CHANGE.register((entity, slot, previousStack, currentStack) -> MagneticEntityRegistry.onEquipmentChange(entity));
+        ServerEntityEvents.ENTITY_LOAD.register(MagneticEntityRegistry::onEntityLoad);
+        ServerEntityEvents.ENTITY_UNLOAD.register(MagneticEntityRegistry::onEntityUnload);
+        ServerTickEvents.START_SERVER_TICK.register(server -> {
+            MagneticStormManager stormManager = MagneticStormManager.get(server);
+            stormManager.tick(server);
+            MagnetWhitelistManager.get(server);
+            PhantomMagnetManager.get(server).tick();
+            MagnetNetworking.syncPhantoms(server, PhantomMagnetManager.get(server));
+            MagnetPrediction.tick(server);});
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            MagnetNetworking.resetPhantoms(handler.getPlayer());
+            MagnetPrediction.stop(handler.getPlayer());});
+        S2CPlayChannelEvents.REGISTER.register((handler, sender, server, channels) -> {if (channels.contains(MagnetNetworking.PREDICTION_SESSION)) MagnetPrediction.start(handler.getPlayer());});
+        ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> MagnetPrediction.start(newPlayer));
+        ServerEntityWorldChangeEvents.AFTER_PLAYER_CHANGE_WORLD.register((player, origin, destination) -> MagnetPrediction.start(player));
+        MagnetNetworking.registerServerReceivers();
+        ServerTickEvents.START_SERVER_TICK.register(server -> {if (server.getTicks() % 1200 == 0) {MagnetBlockEntity.cleanupAchievementData();}});
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> MagnetCommands.register(dispatcher));
+    }
+}
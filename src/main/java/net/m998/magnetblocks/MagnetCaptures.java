@@ -0,0 +1,132 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.FallingBlockEntity;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.util.math.Box;
+import java.util.List;
+
+// Entities a magnet has brought to rest: held at its centre or pressed against a wall, they keep getting pushed but stay in place.
+// Once an item or falling block stays inside CAPTURE_EXTENT for CAPTURE_TICKS ticks it is stopped and left out of the force pass.
+// Mobs and players are never captured, switching their gravity off would outlast the capture in their own movement logic.
+// It is released when it is moved away or when a cluster or phantom magnet whose reach covers it changes
+public class MagnetCaptures {
+    // Конфиги
+    public static boolean ENABLED = true;
+    public static int CAPTURE_TICKS = 40;
+    public static double CAPTURE_EXTENT = 1.0;
+    public static double RELEASE_DISTANCE = 0.5;
+
+    // Tag of entities whose gravity was switched off on capture, it is saved with the entity so a reload can undo it
+    private static final String NO_GRAVITY_TAG = "magnetblocks_captured";
+
+    private final MagneticFieldEngine engine;
+    private final Reference2ObjectOpenHashMap<Entity, Watch> watched = new Reference2ObjectOpenHashMap<>();
+    private final Reference2ObjectOpenHashMap<Entity, Watch> captured = new Reference2ObjectOpenHashMap<>();
+
+    MagnetCaptures(MagneticFieldEngine engine) {
+        this.engine = engine;
+    }
+
+    boolean isCaptured(Entity entity) {
+        return !captured.isEmpty() && captured.containsKey(entity);
+    }
+
+    // Called after the engine pushed the entity this tick
+    void observe(Entity entity, long time) {
+        if (!ENABLED || !(entity instanceof ItemEntity || entity instanceof FallingBlockEntity)) return;
+        Watch watch = watched.get(entity);
+        if (watch == null || !watch.within(entity, CAPTURE_EXTENT)) {
+            watched.put(entity, new Watch(entity, time));
+            return;
+        }
+        watch.seen = time;
+        if (time - watch.since < CAPTURE_TICKS) return;
+        watched.remove(entity);
+        watch.set(entity);
+        captured.put(entity, watch);
+        entity.setVelocity(0.0, 0.0, 0.0);
+        entity.velocityModified = true;
+        // Nothing holds it up once the pull stops. Grounded ones too: the flag is synced, so client prediction (MagnetFieldPredictor) leaves them alone
+        if (!entity.hasNoGravity()) {
+            entity.setNoGravity(true);
+            entity.addCommandTag(NO_GRAVITY_TAG);
+        }
+    }
+
+    void endTick(long time) {
+        if (!watched.isEmpty()) watched.values().removeIf(watch -> watch.seen != time);
+        if (captured.isEmpty()) return;
+        for (ObjectIterator<Reference2ObjectMap.Entry<Entity, Watch>> it = captured.reference2ObjectEntrySet().iterator(); it.hasNext(); ) {
+            Reference2ObjectMap.Entry<Entity, Watch> entry = it.next();
+            Entity entity = entry.getKey();
+            if (entity.isRemoved()) {
+                it.remove();
+                release(entity);
+            } else if (!entry.getValue().within(entity, RELEASE_DISTANCE)) {
+                it.remove();
+                release(entity);
+                engine.wakeAround(entity.getX(), entity.getY(), entity.getZ());
+            }
+        }
+    }
+
+    // Captures and watches inside the changed fields are dropped, the rest stay held
+    void releaseWithin(List<Box> fields) {
+        if (fields.isEmpty()) return;
+        if (!watched.isEmpty()) watched.keySet().removeIf(entity -> isWithin(entity, fields));
+        if (captured.isEmpty()) return;
+        for (ObjectIterator<Entity> it = captured.keySet().iterator(); it.hasNext(); ) {
+            Entity entity = it.next();
+            if (!isWithin(entity, fields)) continue;
+            it.remove();
+            release(entity);
+            engine.wakeAround(entity.getX(), entity.getY(), entity.getZ());
+        }
+    }
+
+    private static boolean isWithin(Entity entity, List<Box> fields) {
+        for (Box field : fields) if (field.contains(entity.getX(), entity.getY(), entity.getZ())) return true;
+        return false;
+    }
+
+    void releaseAll() {
+        watched.clear();
+        if (captured.isEmpty()) return;
+        for (Entity entity : captured.keySet()) release(entity);
+        captured.clear();
+    }
+
+    public static void release(Entity entity) {
+        if (entity.removeCommandTag(NO_GRAVITY_TAG)) entity.setNoGravity(false);
+    }
+
+    public int getCapturedCount() {
+        return captured.size();
+    }
+
+    private static class Watch {
+        private double x, y, z;
+        private final long since;
+        private long seen;
+
+        Watch(Entity entity, long time) {
+            set(entity);
+            this.since = time;
+            this.seen = time;
+        }
+
+        void set(Entity entity) {
+            x = entity.getX();
+            y = entity.getY();
+            z = entity.getZ();
+        }
+
+        boolean within(Entity entity, double extent) {
+            return Math.abs(entity.getX() - x) <= extent && Math.abs(entity.getY() - y) <= extent && Math.abs(entity.getZ() - z) <= extent;
+        }
+    }
+}
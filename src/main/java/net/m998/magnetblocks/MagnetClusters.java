@@ -0,0 +1,170 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+// Adjacent magnets with the same polarity and temperature emit as one field: summed force, distance measured to the box around them.
+// Components wider than MAX_CLUSTER_EXTENT are cut into aligned cells of that size, so an L or a long line is not one big box.
+// Only the components touching a changed magnet are rebuilt, once per tick. The client builds the same clusters for prediction
+public class MagnetClusters {
+    // Конфиги
+    public static int MAX_CLUSTER_EXTENT = 4;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final World world;
+    // Cluster key -> cluster, the key is the lowest packed position among its members
+    private final Long2ObjectOpenHashMap<Cluster> clusters = new Long2ObjectOpenHashMap<>();
+    private final Long2LongOpenHashMap clusterOf = new Long2LongOpenHashMap();
+    // Member position -> component key, component key -> members
+    private final Long2LongOpenHashMap componentOf = new Long2LongOpenHashMap();
+    private final Long2ObjectOpenHashMap<LongArrayList> components = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet dirty = new LongOpenHashSet();
+    private final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+    private boolean built = false;
+
+    public MagnetClusters(World world) {
+        this.world = world;
+    }
+
+    // Polarity, power or temperature of the magnet changed
+    public void markDirty(long packedPos) {
+        dirty.add(packedPos);
+    }
+
+    // Rebuilds the components around the magnets that were placed, removed or changed. Clusters that went away and clusters that
+    // were made are both passed to changed
+    public void update(MagnetEmitterRegistry registry, Consumer<Cluster> changed) {
+        registry.consumeChangedBlockMagnets(dirty::add);
+        if (!built) {
+            built = true;
+            dirty.clear();
+            rebuild(registry::forEachBlockMagnet, registry::containsBlockMagnet);
+            return;
+        }
+        if (dirty.isEmpty()) return;
+        LongOpenHashSet starts = new LongOpenHashSet();
+        for (LongIterator it = dirty.iterator(); it.hasNext(); ) {
+            long packed = it.nextLong();
+            starts.add(packed);
+            drop(packed, starts, changed);
+            for (Direction direction : DIRECTIONS) drop(BlockPos.offset(packed, direction), starts, changed);
+        }
+        dirty.clear();
+        for (LongIterator it = starts.iterator(); it.hasNext(); ) flood(registry::containsBlockMagnet, it.nextLong(), changed);
+    }
+
+    // Clusters over the given magnet positions, contains must answer for the same set
+    public void rebuild(Consumer<LongConsumer> magnets, LongPredicate contains) {
+        clusters.clear();
+        clusterOf.clear();
+        componentOf.clear();
+        components.clear();
+        magnets.accept(start -> flood(contains, start, cluster -> {}));
+    }
+
+    // Takes the whole component of the position apart, its members are flooded again
+    private void drop(long packed, LongOpenHashSet starts, Consumer<Cluster> changed) {
+        if (!componentOf.containsKey(packed)) return;
+        LongArrayList members = components.remove(componentOf.get(packed));
+        for (int i = 0; i < members.size(); i++) {
+            long member = members.getLong(i);
+            componentOf.remove(member);
+            Cluster cluster = clusters.remove(clusterOf.remove(member));
+            if (cluster != null) changed.accept(cluster);
+            starts.add(member);
+        }
+    }
+
+    private void flood(LongPredicate contains, long start, Consumer<Cluster> changed) {
+        if (componentOf.containsKey(start) || !contains.test(start)) return;
+        if (!(world.getBlockEntity(pos.set(start)) instanceof MagnetBlockEntity magnet) || !magnet.isEmitting()) return;
+        boolean attracting = magnet.getCachedState().get(MagnetBlock.ATTRACTING);
+        int temperature = magnet.getTemperature();
+        LongArrayList members = new LongArrayList();
+        long key = start;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        componentOf.put(start, start);
+        queue.enqueue(start);
+        while (!queue.isEmpty()) {
+            long packed = queue.dequeueLong();
+            members.add(packed);
+            key = Math.min(key, packed);
+            int x = BlockPos.unpackLongX(packed), y = BlockPos.unpackLongY(packed), z = BlockPos.unpackLongZ(packed);
+            minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+            for (Direction direction : DIRECTIONS) {
+                long neighbor = BlockPos.offset(packed, direction);
+                if (componentOf.containsKey(neighbor) || !contains.test(neighbor)) continue;
+                if (!(world.getBlockEntity(pos.set(neighbor)) instanceof MagnetBlockEntity neighborMagnet) || !neighborMagnet.isEmitting()) continue;
+                if (neighborMagnet.getCachedState().get(MagnetBlock.ATTRACTING) != attracting || neighborMagnet.getTemperature() != temperature) continue;
+                componentOf.put(neighbor, start);
+                queue.enqueue(neighbor);
+            }
+        }
+        for (int i = 0; i < members.size(); i++) componentOf.put(members.getLong(i), key);
+        components.put(key, members);
+        double range = magnet.fieldRange(), force = magnet.fieldForce();
+        if (maxX - minX < MAX_CLUSTER_EXTENT && maxY - minY < MAX_CLUSTER_EXTENT && maxZ - minZ < MAX_CLUSTER_EXTENT) {
+            addCluster(members, range, force, attracting, changed);
+            return;
+        }
+        Long2ObjectOpenHashMap<LongArrayList> cells = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < members.size(); i++) {
+            long packed = members.getLong(i);
+            long cell = BlockPos.asLong(Math.floorDiv(BlockPos.unpackLongX(packed), MAX_CLUSTER_EXTENT),
+                    Math.floorDiv(BlockPos.unpackLongY(packed), MAX_CLUSTER_EXTENT), Math.floorDiv(BlockPos.unpackLongZ(packed), MAX_CLUSTER_EXTENT));
+            cells.computeIfAbsent(cell, k -> new LongArrayList()).add(packed);
+        }
+        for (LongArrayList cell : cells.values()) addCluster(cell, range, force, attracting, changed);
+    }
+
+    private void addCluster(LongArrayList members, double range, double force, boolean attracting, Consumer<Cluster> changed) {
+        long key = Long.MAX_VALUE;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < members.size(); i++) {
+            long packed = members.getLong(i);
+            key = Math.min(key, packed);
+            int x = BlockPos.unpackLongX(packed), y = BlockPos.unpackLongY(packed), z = BlockPos.unpackLongZ(packed);
+            minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+        }
+        for (int i = 0; i < members.size(); i++) clusterOf.put(members.getLong(i), key);
+        Cluster cluster = new Cluster(key, (minX + maxX) / 2.0 + 0.5, (minY + maxY) / 2.0 + 0.5, (minZ + maxZ) / 2.0 + 0.5,
+                (maxX - minX) / 2.0, (maxY - minY) / 2.0, (maxZ - minZ) / 2.0, range, force * members.size(), attracting, members.size());
+        clusters.put(key, cluster);
+        changed.accept(cluster);
+    }
+
+    public long clusterKey(long packedPos) {
+        return clusterOf.getOrDefault(packedPos, packedPos);
+    }
+
+    public Collection<Cluster> getClusters() {
+        return clusters.values();
+    }
+
+    // Centre and half extents of the box spanned by the member block centres
+    public record Cluster(long key, double x, double y, double z, double halfX, double halfY, double halfZ,
+                          double range, double force, boolean attracting, int size) {
+        // Everything the field can reach
+        public Box reach() {
+            return new Box(x - halfX - range, y - halfY - range, z - halfZ - range, x + halfX + range, y + halfY + range, z + halfZ + range);
+        }
+    }
+}
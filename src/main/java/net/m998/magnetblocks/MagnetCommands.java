@@ -7,17 +7,11 @@ import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import net.minecraft.command.argument.BlockPosArgumentType;
 import net.minecraft.server.command.ServerCommandSource;
-import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
-import net.minecraft.sound.SoundCategory;
-import net.minecraft.sound.SoundEvents;
 import net.minecraft.text.Text;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.World;
 import net.minecraft.server.MinecraftServer;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.List;
 import static net.minecraft.server.command.CommandManager.*;
 
 public class MagnetCommands {
@@ -108,13 +102,23 @@ public class MagnetCommands {
                                         .executes(context -> adminStormEnable(context, BoolArgumentType.getBool(context, "value")))))
                         .then(literal("status")
                                 .executes(MagnetCommands::adminStormStatus)))
+                .then(literal("budget")
+                        .then(argument("ms", DoubleArgumentType.doubleArg(0.5, 50.0))
+                                .executes(context -> adminSetBudget(context, DoubleArgumentType.getDouble(context, "ms")))))
+                .then(literal("simd")
+                        .then(argument("value", BoolArgumentType.bool())
+                                .executes(context -> adminSetVectorized(context, BoolArgumentType.getBool(context, "value")))))
                 .then(literal("debug")
                         .executes(MagnetCommands::adminDebugInfo));
     }
 
     private static int createPhantomMagnet(CommandContext<ServerCommandSource> context, BlockPos pos, double radius, double forceMultiplier, boolean attracting) {
         PhantomMagnetManager manager = PhantomMagnetManager.get(context.getSource().getServer());
-        int id = manager.createMagnet(pos, radius, forceMultiplier, attracting);
+        int id = manager.createMagnet(context.getSource().getWorld().getRegistryKey(), pos, radius, forceMultiplier, attracting);
+        if (id < 0) {
+            context.getSource().sendError(Text.translatable("command.magnetblocks.create.error"));
+            return 0;
+        }
 
         double actualForce = Math.min(forceMultiplier, PhantomMagnetManager.getMaxForceMultiplier());
         if (forceMultiplier > actualForce) {
@@ -128,10 +132,8 @@ public class MagnetCommands {
 
     private static int removePhantomMagnet(CommandContext<ServerCommandSource> context, int id) {
         PhantomMagnetManager manager = PhantomMagnetManager.get(context.getSource().getServer());
-        var magnet = manager.getMagnets().get(id);
 
-        if (magnet != null && manager.removeMagnet(id)) {
-            stopBeaconSoundForMagnet(context.getSource().getWorld(), magnet.getPos());
+        if (manager.removeMagnet(id)) {
             context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.remove.success", id), true);
             return 1;
         } else {
@@ -141,16 +143,16 @@ public class MagnetCommands {
     }
 
     private static int modifyMagnetRange(CommandContext<ServerCommandSource> context, int id, double newRange) {
-        return modifyMagnetProperty(context, id, magnet -> {
-            magnet.setRadius(newRange);
+        return modifyMagnetProperty(context, id, (magnets, slot) -> {
+            magnets.setRadius(slot, newRange);
             return Text.translatable("command.magnetblocks.modify.range.success", id, newRange);
         });
     }
 
     private static int modifyMagnetForce(CommandContext<ServerCommandSource> context, int id, double newForce) {
-        return modifyMagnetProperty(context, id, magnet -> {
+        return modifyMagnetProperty(context, id, (magnets, slot) -> {
             double actualForce = Math.min(newForce, PhantomMagnetManager.getMaxForceMultiplier());
-            magnet.setForceMultiplier(actualForce);
+            magnets.setForce(slot, actualForce);
 
             if (newForce > actualForce) {
                 context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.modify.force_limited", newForce, actualForce), false);
@@ -161,8 +163,8 @@ public class MagnetCommands {
     }
 
     private static int modifyMagnetPolarity(CommandContext<ServerCommandSource> context, int id, boolean newPolarity) {
-        return modifyMagnetProperty(context, id, magnet -> {
-            magnet.setAttracting(newPolarity);
+        return modifyMagnetProperty(context, id, (magnets, slot) -> {
+            magnets.setAttracting(slot, newPolarity);
             return Text.translatable("command.magnetblocks.modify.polarity.success", id,
                     newPolarity ? Text.translatable("command.magnetblocks.polarity.attracting") : Text.translatable("command.magnetblocks.polarity.repelling"));
         });
@@ -170,33 +172,44 @@ public class MagnetCommands {
 
     private static int modifyMagnetProperty(CommandContext<ServerCommandSource> context, int id, MagnetModifier modifier) {
         PhantomMagnetManager manager = PhantomMagnetManager.get(context.getSource().getServer());
-        var magnet = manager.getMagnets().get(id);
+        int slot = manager.residentSlot(id);
 
-        if (magnet != null) {
-            Text resultMessage = modifier.modify(magnet);
-            manager.markDirty();
+        if (slot >= 0) {
+            Text resultMessage = modifier.modify(manager.getMagnets(), slot);
+            manager.magnetModified(id);
             context.getSource().sendFeedback(() -> resultMessage, true);
             return 1;
+        } else if (manager.hasMagnet(id)) {
+            // The region is being read in the background, the server thread does not wait for it
+            context.getSource().sendError(Text.translatable("command.magnetblocks.modify.error.loading", id));
+            return 0;
         } else {
             context.getSource().sendError(Text.translatable("command.magnetblocks.modify.error.not_found", id));
             return 0;
         }
     }
 
+    // Only resident magnets are listed, the others are counted
     private static int listPhantomMagnets(CommandContext<ServerCommandSource> context) {
         PhantomMagnetManager manager = PhantomMagnetManager.get(context.getSource().getServer());
         var magnets = manager.getMagnets();
+        int[] ids = manager.getResidentIds();
+        int notResident = manager.getMagnetCount() - ids.length;
 
-        if (magnets.isEmpty()) {
+        if (ids.length == 0 && notResident == 0) {
             context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.list.empty"), false);
         } else {
-            context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.list.header", magnets.size()), false);
-            magnets.forEach((id, magnet) -> context.getSource().sendFeedback(() ->
-                    Text.translatable("command.magnetblocks.list.entry", id, magnet.getPos().toShortString(),
-                            magnet.getRadius(), magnet.getForceMultiplier(),
-                            magnet.isAttracting() ? Text.translatable("command.magnetblocks.polarity.attracting") : Text.translatable("command.magnetblocks.polarity.repelling")), false));
+            context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.list.header", ids.length), false);
+            for (int id : ids) {
+                int slot = magnets.slot(id);
+                Text entry = Text.translatable("command.magnetblocks.list.entry", magnets.getId(slot),
+                        magnets.getPos(slot).toShortString(), magnets.getDimension(slot).getValue().toString(), magnets.getRadius(slot), magnets.getForceMultiplier(slot),
+                        magnets.isAttracting(slot) ? Text.translatable("command.magnetblocks.polarity.attracting") : Text.translatable("command.magnetblocks.polarity.repelling"));
+                context.getSource().sendFeedback(() -> entry, false);
+            }
+            if (notResident > 0) context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.list.not_resident", notResident), false);
         }
-        return magnets.size();
+        return ids.length;
     }
 
     private static int clearAllPhantomMagnets(CommandContext<ServerCommandSource> context) {
@@ -205,10 +218,6 @@ public class MagnetCommands {
         if (manager.isClearConfirmationPending()) {
             int magnetCount = manager.getMagnetCount();
 
-            // Останавливаем звуки для всех магнитов
-            manager.getMagnets().forEach((id, magnet) ->
-                    stopBeaconSoundForMagnet(context.getSource().getWorld(), magnet.getPos()));
-
             manager.clearAllMagnets(true);
             context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.clear.success", magnetCount), true);
             return magnetCount;
@@ -368,31 +377,42 @@ public class MagnetCommands {
         return 1;
     }
 
+    private static int adminSetBudget(CommandContext<ServerCommandSource> context, double budget) {
+        MagnetUpdateScheduler.TICK_BUDGET_MS = budget;
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.budget.success", budget), true);
+        return 1;
+    }
+
+    private static int adminSetVectorized(CommandContext<ServerCommandSource> context, boolean value) {
+        if (value && MagneticFieldSnapshot.VECTOR_KERNEL == null) {
+            context.getSource().sendError(Text.translatable("command.magnetblocks.admin.simd.unavailable"));
+            return 0;
+        }
+        MagneticFieldSnapshot.VECTORIZED = value;
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.simd.success", value), true);
+        return 1;
+    }
+
     private static int adminDebugInfo(CommandContext<ServerCommandSource> context) {
         PhantomMagnetManager manager = PhantomMagnetManager.get(context.getSource().getServer());
-        var magnets = manager.getMagnets();
 
         context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.header"), false);
-        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.magnets_count", magnets.size()), false);
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.magnets_count", manager.getMagnetCount()), false);
         context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.clear_pending", manager.isClearConfirmationPending()), false);
+        MagneticFieldEngine engine = MagneticFieldEngine.get(context.getSource().getWorld());
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.budget", MagnetUpdateScheduler.TICK_BUDGET_MS, engine.getScheduler().getDeferredGroups()), false);
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.dormant", engine.getDormantCount()), false);
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.velocity",
+                engine.getVelocitySync().getSyncedLastTick(), engine.getVelocitySync().getTracked()), false);
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.captured", engine.getCaptures().getCapturedCount()), false);
+        MagnetNetworks networks = MagnetNetworks.get(context.getSource().getWorld());
+        context.getSource().sendFeedback(() -> Text.translatable("command.magnetblocks.admin.debug.networks", networks.getNetworkCount(), networks.getBacklog()), false);
 
         return 1;
     }
 
-    private static void stopBeaconSoundForMagnet(World world, BlockPos pos) {
-        if (world instanceof ServerWorld serverWorld) {
-            List<ServerPlayerEntity> players = serverWorld.getPlayers(player ->
-                    player.squaredDistanceTo(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5) <= 256);
-
-            for (ServerPlayerEntity player : players) {
-                player.networkHandler.sendPacket(new net.minecraft.network.packet.s2c.play.StopSoundS2CPacket(
-                        SoundEvents.BLOCK_BEACON_AMBIENT.getId(), SoundCategory.BLOCKS));
-            }
-        }
-    }
-
     @FunctionalInterface
     private interface MagnetModifier {
-        Text modify(PhantomMagnetManager.PhantomMagnet magnet);
+        Text modify(PhantomMagnetStore magnets, int slot);
     }
 }
@@ -0,0 +1,329 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.chunk.WorldChunk;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+// Index of magnets by chunk section (packed long), block magnets store packed positions, phantom magnets their ids
+public class MagnetEmitterRegistry {
+    private static final Map<ServerWorld, MagnetEmitterRegistry> REGISTRIES = new WeakHashMap<>();
+
+    private final ServerWorld world;
+    private final Long2ObjectOpenHashMap<LongOpenHashSet> blockMagnets = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<IntOpenHashSet> phantomMagnets = new Long2ObjectOpenHashMap<>();
+    private final Int2LongOpenHashMap phantomSections = new Int2LongOpenHashMap();
+    private final Int2DoubleOpenHashMap phantomRadii = new Int2DoubleOpenHashMap();
+    private final Int2LongOpenHashMap phantomPositions = new Int2LongOpenHashMap();
+    // Loaded chunks inside the radius of each phantom magnet, kept up to date by the chunk events. Phantoms without any are skipped by the engine.
+    // Chunk columns map to the phantoms whose radius covers them, so a chunk event only touches those, and the loaded columns come
+    // from the same events so the starting count of a new phantom matches the later deltas
+    private final Int2IntOpenHashMap phantomLoadedChunks = new Int2IntOpenHashMap();
+    private final Long2ObjectOpenHashMap<IntOpenHashSet> phantomColumns = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet loadedChunks = new LongOpenHashSet();
+    // Block magnets placed, removed, loaded or unloaded since the field engine last asked (MagnetClusters.update)
+    private final LongOpenHashSet changedBlockMagnets = new LongOpenHashSet();
+    // Phantom magnets put or removed since then, with the centre and radius of the field before or after the change
+    private final IntArrayList changedPhantoms = new IntArrayList();
+    private final DoubleArrayList changedPhantomFields = new DoubleArrayList();
+    private double maxPhantomRadius = 0;
+    private int blockMagnetCount = 0;
+
+    private MagnetEmitterRegistry(ServerWorld world) {
+        this.world = world;
+    }
+
+    public static MagnetEmitterRegistry get(ServerWorld world) {
+        MagnetEmitterRegistry registry = REGISTRIES.get(world);
+        if (registry == null) {
+            registry = new MagnetEmitterRegistry(world);
+            REGISTRIES.put(world, registry);
+            PhantomMagnetStore magnets = PhantomMagnetManager.get(world.getServer()).getMagnets();
+            for (int slot = 0; slot < magnets.size(); slot++) {
+                if (magnets.getDimension(slot) == world.getRegistryKey()) registry.putPhantom(magnets, slot);
+            }
+        }
+        return registry;
+    }
+
+    // The registry exists no later than the first chunk of its world, so every loaded chunk passes through here
+    public static void onChunkLoad(ServerWorld world, WorldChunk chunk) {
+        MagnetEmitterRegistry registry = get(world);
+        registry.countLoadedChunk(chunk.getPos().toLong(), 1);
+        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+            if (blockEntity instanceof MagnetBlockEntity) registry.addBlockMagnet(blockEntity.getPos());
+        }
+    }
+
+    public static void onChunkUnload(ServerWorld world, WorldChunk chunk) {
+        MagnetEmitterRegistry registry = REGISTRIES.get(world);
+        if (registry == null) return;
+        ChunkPos chunkPos = chunk.getPos();
+        registry.countLoadedChunk(chunkPos.toLong(), -1);
+        if (registry.blockMagnets.isEmpty()) return;
+        for (int sectionY = world.getBottomSectionCoord(); sectionY < world.getTopSectionCoord(); sectionY++) {
+            LongOpenHashSet removed = registry.blockMagnets.remove(ChunkSectionPos.asLong(chunkPos.x, sectionY, chunkPos.z));
+            if (removed != null) {
+                registry.blockMagnetCount -= removed.size();
+                registry.changedBlockMagnets.addAll(removed);
+            }
+        }
+    }
+
+    // Only the registry of the magnet's own world indexes it
+    static void phantomUpdated(PhantomMagnetStore magnets, int slot) {
+        for (Map.Entry<ServerWorld, MagnetEmitterRegistry> entry : REGISTRIES.entrySet()) {
+            if (entry.getKey().getRegistryKey() == magnets.getDimension(slot)) entry.getValue().putPhantom(magnets, slot);
+            else entry.getValue().removePhantom(magnets.getId(slot));
+        }
+    }
+
+    static void phantomRemoved(int id) {
+        for (MagnetEmitterRegistry registry : REGISTRIES.values()) registry.removePhantom(id);
+    }
+
+    static void phantomsCleared() {
+        for (MagnetEmitterRegistry registry : REGISTRIES.values()) {
+            for (IntIterator it = registry.phantomPositions.keySet().iterator(); it.hasNext(); ) {
+                int id = it.nextInt();
+                registry.phantomChanged(id, registry.phantomPositions.get(id), registry.phantomRadii.get(id));
+            }
+            registry.phantomMagnets.clear();
+            registry.phantomSections.clear();
+            registry.phantomRadii.clear();
+            registry.phantomPositions.clear();
+            registry.phantomLoadedChunks.clear();
+            registry.phantomColumns.clear();
+            registry.maxPhantomRadius = 0;
+        }
+    }
+
+    public void addBlockMagnet(BlockPos pos) {
+        long sectionKey = ChunkSectionPos.from(pos).asLong();
+        if (blockMagnets.computeIfAbsent(sectionKey, k -> new LongOpenHashSet()).add(pos.asLong())) {
+            blockMagnetCount++;
+            changedBlockMagnets.add(pos.asLong());
+        }
+    }
+
+    public void removeBlockMagnet(BlockPos pos) {
+        long sectionKey = ChunkSectionPos.from(pos).asLong();
+        LongOpenHashSet positions = blockMagnets.get(sectionKey);
+        if (positions == null || !positions.remove(pos.asLong())) return;
+        if (positions.isEmpty()) blockMagnets.remove(sectionKey);
+        blockMagnetCount--;
+        changedBlockMagnets.add(pos.asLong());
+    }
+
+    public boolean containsBlockMagnet(long packedPos) {
+        LongOpenHashSet positions = blockMagnets.get(ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(packedPos)),
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(packedPos)), ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(packedPos))));
+        return positions != null && positions.contains(packedPos);
+    }
+
+    private void putPhantom(PhantomMagnetStore magnets, int slot) {
+        int id = magnets.getId(slot);
+        removePhantom(id);
+        BlockPos pos = magnets.getPos(slot);
+        double radius = magnets.getRadius(slot);
+        long sectionKey = ChunkSectionPos.from(pos).asLong();
+        phantomMagnets.computeIfAbsent(sectionKey, k -> new IntOpenHashSet()).add(id);
+        phantomSections.put(id, sectionKey);
+        phantomRadii.put(id, radius);
+        phantomPositions.put(id, pos.asLong());
+        int[] loaded = new int[1];
+        forEachColumn(pos.asLong(), radius, column -> {
+            phantomColumns.computeIfAbsent(column, k -> new IntOpenHashSet()).add(id);
+            if (loadedChunks.contains(column)) loaded[0]++;
+        });
+        phantomLoadedChunks.put(id, loaded[0]);
+        maxPhantomRadius = Math.max(maxPhantomRadius, radius);
+        phantomChanged(id, pos.asLong(), radius);
+    }
+
+    private void removePhantom(int id) {
+        if (!phantomSections.containsKey(id)) return;
+        long sectionKey = phantomSections.remove(id);
+        double radius = phantomRadii.remove(id);
+        long pos = phantomPositions.remove(id);
+        phantomLoadedChunks.remove(id);
+        forEachColumn(pos, radius, column -> {
+            IntOpenHashSet ids = phantomColumns.get(column);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) phantomColumns.remove(column);
+        });
+        IntOpenHashSet ids = phantomMagnets.get(sectionKey);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) phantomMagnets.remove(sectionKey);
+        }
+        if (radius >= maxPhantomRadius) {
+            maxPhantomRadius = 0;
+            for (double r : phantomRadii.values()) maxPhantomRadius = Math.max(maxPhantomRadius, r);
+        }
+        phantomChanged(id, pos, radius);
+    }
+
+    private void phantomChanged(int id, long pos, double radius) {
+        changedPhantoms.add(id);
+        changedPhantomFields.add(BlockPos.unpackLongX(pos) + 0.5);
+        changedPhantomFields.add(BlockPos.unpackLongY(pos) + 0.5);
+        changedPhantomFields.add(BlockPos.unpackLongZ(pos) + 0.5);
+        changedPhantomFields.add(radius);
+    }
+
+    public void consumeChangedBlockMagnets(LongConsumer consumer) {
+        if (changedBlockMagnets.isEmpty()) return;
+        changedBlockMagnets.forEach(consumer);
+        changedBlockMagnets.clear();
+    }
+
+    public void consumeChangedPhantoms(PhantomChangeConsumer consumer) {
+        if (changedPhantoms.isEmpty()) return;
+        for (int i = 0; i < changedPhantoms.size(); i++) {
+            int offset = i * 4;
+            consumer.accept(changedPhantoms.getInt(i), changedPhantomFields.getDouble(offset), changedPhantomFields.getDouble(offset + 1),
+                    changedPhantomFields.getDouble(offset + 2), changedPhantomFields.getDouble(offset + 3));
+        }
+        changedPhantoms.clear();
+        changedPhantomFields.clear();
+    }
+
+    public void forEachBlockMagnet(LongConsumer consumer) {
+        for (LongOpenHashSet positions : blockMagnets.values()) positions.forEach(consumer);
+    }
+
+    public void forEachPhantom(IntConsumer consumer) {
+        for (IntOpenHashSet ids : phantomMagnets.values()) ids.forEach(consumer);
+    }
+
+    // Block magnets whose section lies within range of the point, the caller does the exact distance check
+    public void forEachBlockMagnetNear(double x, double y, double z, double range, LongConsumer consumer) {
+        if (blockMagnets.isEmpty()) return;
+        int minX = ChunkSectionPos.getSectionCoord(MathHelper.floor(x - range));
+        int minY = ChunkSectionPos.getSectionCoord(MathHelper.floor(y - range));
+        int minZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(z - range));
+        int maxX = ChunkSectionPos.getSectionCoord(MathHelper.floor(x + range));
+        int maxY = ChunkSectionPos.getSectionCoord(MathHelper.floor(y + range));
+        int maxZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(z + range));
+        long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume > blockMagnets.size()) {
+            for (Long2ObjectMap.Entry<LongOpenHashSet> entry : blockMagnets.long2ObjectEntrySet()) {
+                long key = entry.getLongKey();
+                int sx = ChunkSectionPos.unpackX(key), sy = ChunkSectionPos.unpackY(key), sz = ChunkSectionPos.unpackZ(key);
+                if (sx >= minX && sx <= maxX && sy >= minY && sy <= maxY && sz >= minZ && sz <= maxZ) entry.getValue().forEach(consumer);
+            }
+            return;
+        }
+        for (int sx = minX; sx <= maxX; sx++) {
+            for (int sy = minY; sy <= maxY; sy++) {
+                for (int sz = minZ; sz <= maxZ; sz++) {
+                    LongOpenHashSet positions = blockMagnets.get(ChunkSectionPos.asLong(sx, sy, sz));
+                    if (positions != null) positions.forEach(consumer);
+                }
+            }
+        }
+    }
+
+    // Phantom magnets whose radius can reach the point
+    public void forEachPhantomAffecting(double x, double y, double z, IntConsumer consumer) {
+        if (phantomMagnets.isEmpty()) return;
+        for (Long2ObjectMap.Entry<IntOpenHashSet> entry : phantomMagnets.long2ObjectEntrySet()) {
+            long key = entry.getLongKey();
+            double dx = distanceToSection(x, ChunkSectionPos.unpackX(key));
+            double dy = distanceToSection(y, ChunkSectionPos.unpackY(key));
+            double dz = distanceToSection(z, ChunkSectionPos.unpackZ(key));
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared > maxPhantomRadius * maxPhantomRadius) continue;
+            entry.getValue().forEach((int id) -> {
+                double radius = phantomRadii.get(id);
+                if (distanceSquared <= radius * radius) consumer.accept(id);
+            });
+        }
+    }
+
+    // Phantom magnets whose radius covers a column of the chunk square, an id may come up more than once
+    public void forEachPhantomReaching(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, IntConsumer consumer) {
+        if (phantomColumns.isEmpty()) return;
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                IntOpenHashSet ids = phantomColumns.get(ChunkPos.toLong(cx, cz));
+                if (ids != null) ids.forEach(consumer);
+            }
+        }
+    }
+
+    // Same test as the column index, against the whole square at once
+    public boolean phantomReaches(int id, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        if (!phantomPositions.containsKey(id)) return false;
+        long pos = phantomPositions.get(id);
+        double radius = phantomRadii.get(id);
+        double x = BlockPos.unpackLongX(pos) + 0.5, z = BlockPos.unpackLongZ(pos) + 0.5;
+        double dx = Math.max(0, Math.max(ChunkSectionPos.getBlockCoord(minChunkX) - x, x - ChunkSectionPos.getBlockCoord(maxChunkX + 1)));
+        double dz = Math.max(0, Math.max(ChunkSectionPos.getBlockCoord(minChunkZ) - z, z - ChunkSectionPos.getBlockCoord(maxChunkZ + 1)));
+        return dx * dx + dz * dz <= radius * radius;
+    }
+
+    // Chunk columns (ChunkPos longs) inside the radius, walked once when a phantom is created, changed or removed
+    private static void forEachColumn(long packed, double radius, LongConsumer consumer) {
+        double x = BlockPos.unpackLongX(packed) + 0.5, z = BlockPos.unpackLongZ(packed) + 0.5;
+        int minX = ChunkSectionPos.getSectionCoord(MathHelper.floor(x - radius)), maxX = ChunkSectionPos.getSectionCoord(MathHelper.floor(x + radius));
+        int minZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(z - radius)), maxZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(z + radius));
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                if (columnInRange(x, z, radius, cx, cz)) consumer.accept(ChunkPos.toLong(cx, cz));
+            }
+        }
+    }
+
+    private void countLoadedChunk(long column, int delta) {
+        if (!(delta > 0 ? loadedChunks.add(column) : loadedChunks.remove(column))) return;
+        IntOpenHashSet ids = phantomColumns.get(column);
+        if (ids == null) return;
+        for (IntIterator it = ids.iterator(); it.hasNext(); ) phantomLoadedChunks.addTo(it.nextInt(), delta);
+    }
+
+    private static boolean columnInRange(double x, double z, double radius, int chunkX, int chunkZ) {
+        double dx = distanceToSection(x, chunkX), dz = distanceToSection(z, chunkZ);
+        return dx * dx + dz * dz <= radius * radius;
+    }
+
+    public boolean hasLoadedChunks(int phantomId) {
+        return phantomLoadedChunks.get(phantomId) > 0;
+    }
+
+    private static double distanceToSection(double coord, int sectionCoord) {
+        double min = ChunkSectionPos.getBlockCoord(sectionCoord);
+        if (coord < min) return min - coord;
+        return Math.max(0, coord - (min + 16));
+    }
+
+    public boolean isEmpty() {
+        return blockMagnets.isEmpty() && phantomMagnets.isEmpty();
+    }
+
+    public int getBlockMagnetCount() { return blockMagnetCount; }
+    public int getPhantomCount() { return phantomSections.size(); }
+    public int getSectionCount() { return blockMagnets.size() + phantomMagnets.size(); }
+    public ServerWorld getWorld() { return world; }
+
+    public interface PhantomChangeConsumer {
+        void accept(int id, double x, double y, double z, double radius);
+    }
+}
@@ -0,0 +1,148 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayerEntity;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Vec3d;
+
+// Client side pull of magnets on the local player and on nearby items, from synced block states, the phantom list
+// and the strength the server sends with the session. Runs before the player moves, so the pull is felt without a round trip.
+// The player totals are reported to MagnetPrediction, which answers with a correction only when they drift apart.
+// Items are still synced by the server (MagnetVelocitySync), prediction only fills the ticks between its updates
+public class MagnetFieldPredictor {
+    // Конфиги
+    public static int RESCAN_INTERVAL = 10;
+    public static int REPORT_INTERVAL = 5;
+    public static double ITEM_DISTANCE = 32.0;
+
+    private static final LongOpenHashSet magnets = new LongOpenHashSet();
+    private static final double[] impulse = new double[3];
+    private static ClientWorld clusterWorld;
+    private static MagnetClusters clusters;
+    private static int session = -1;
+    private static double strength;
+    // Player impulse applied since the session started, reported every REPORT_INTERVAL ticks while it changes
+    private static double totalX, totalY, totalZ;
+    private static boolean unreported;
+    private static int reportTicks;
+
+    public static void onSession(int id, double strengthMultiplier) {
+        if (id != session) {
+            session = id;
+            totalX = totalY = totalZ = 0.0;
+            unreported = false;
+        }
+        strength = strengthMultiplier;
+    }
+
+    public static void onCorrection(MinecraftClient client, int id, double dx, double dy, double dz) {
+        if (id != session || client.player == null) return;
+        client.player.addVelocity(dx, dy, dz);
+    }
+
+    public static void clear() {
+        session = -1;
+        strength = 0.0;
+        clusters = null;
+        clusterWorld = null;
+        magnets.clear();
+    }
+
+    public static void tick(MinecraftClient client) {
+        ClientWorld world = client.world;
+        ClientPlayerEntity player = client.player;
+        if (world == null || player == null || session < 0 || client.isPaused()) return;
+        if (world != clusterWorld) {
+            clusterWorld = world;
+            clusters = new MagnetClusters(world);
+            rescan(world, player);
+        } else if (world.getTime() % RESCAN_INTERVAL == 0) {
+            rescan(world, player);
+        }
+        if (clusters.getClusters().isEmpty() && MagnetBlocksClient.getPhantoms().isEmpty()) return;
+
+        if (strength > 0 && !player.isSpectator() && !player.isCreative()) {
+            Vec3d velocity = player.getVelocity();
+            if (computeImpulse(player, strength, true, velocity)) {
+                double vx = velocity.x + impulse[0], vy = velocity.y + impulse[1], vz = velocity.z + impulse[2];
+                double scale = MagneticForceKernel.clampScale(vx, vy, vz);
+                player.setVelocity(vx * scale, vy * scale, vz * scale);
+                totalX += vx * scale - velocity.x;
+                totalY += vy * scale - velocity.y;
+                totalZ += vz * scale - velocity.z;
+                unreported = true;
+            }
+        }
+        if (unreported && ++reportTicks >= REPORT_INTERVAL) {
+            reportTicks = 0;
+            unreported = false;
+            report(player);
+        }
+
+        // Items captured by the server have no gravity (MagnetCaptures), it does not push them
+        for (ItemEntity item : world.getEntitiesByClass(ItemEntity.class, player.getBoundingBox().expand(ITEM_DISTANCE), item -> !item.hasNoGravity())) {
+            double itemStrength = MagnetBlockEntity.getItemStrength(item.getStack());
+            if (itemStrength <= 0) continue;
+            Vec3d velocity = item.getVelocity();
+            if (!computeImpulse(item, MagneticForceKernel.strengthMultiplier(itemStrength), false, velocity)) continue;
+            double vx = velocity.x + impulse[0], vy = velocity.y + impulse[1], vz = velocity.z + impulse[2];
+            double scale = MagneticForceKernel.clampScale(vx, vy, vz);
+            item.setVelocity(vx * scale, vy * scale, vz * scale);
+        }
+    }
+
+    // Same kernel and emitters as MagneticFieldEngine, without its update intervals and dormancy
+    private static boolean computeImpulse(Entity entity, double strengthMultiplier, boolean player, Vec3d velocity) {
+        impulse[0] = impulse[1] = impulse[2] = 0.0;
+        double px = entity.getX(), py = entity.getY(), pz = entity.getZ();
+        boolean hit = false;
+        for (MagnetClusters.Cluster cluster : clusters.getClusters()) {
+            hit |= MagneticForceKernel.accumulate(impulse, 0, cluster.x(), cluster.y(), cluster.z(), cluster.halfX(), cluster.halfY(), cluster.halfZ(),
+                    cluster.range(), cluster.force(), cluster.attracting(), px, py, pz, strengthMultiplier, player, velocity.x, velocity.y, velocity.z) > 0;
+        }
+        for (PhantomMagnetManager.PhantomMagnet magnet : MagnetBlocksClient.getPhantoms().values()) {
+            BlockPos pos = magnet.getPos();
+            hit |= MagneticForceKernel.accumulate(impulse, 0, pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5, 0, 0, 0,
+                    magnet.getRadius(), MagnetBlockEntity.phantomForce(magnet.getForceMultiplier()), magnet.isAttracting(), px, py, pz, strengthMultiplier, player, velocity.x, velocity.y, velocity.z) > 0;
+        }
+        return hit;
+    }
+
+    private static void report(ClientPlayerEntity player) {
+        Vec3d velocity = player.getVelocity();
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(session);
+        buf.writeDouble(totalX);
+        buf.writeDouble(totalY);
+        buf.writeDouble(totalZ);
+        buf.writeFloat((float) velocity.x);
+        buf.writeFloat((float) velocity.y);
+        buf.writeFloat((float) velocity.z);
+        ClientPlayNetworking.send(MagnetNetworking.PREDICTION_REPORT, buf);
+    }
+
+    // Emitting magnets whose field can reach the player, clustered the way the server does it
+    private static void rescan(ClientWorld world, ClientPlayerEntity player) {
+        magnets.clear();
+        int radius = ChunkSectionPos.getSectionCoord((int) Math.ceil(MagnetBlockEntity.MAX_RANGE + ITEM_DISTANCE)) + 1;
+        int chunkX = player.getChunkPos().x, chunkZ = player.getChunkPos().z;
+        for (int cx = chunkX - radius; cx <= chunkX + radius; cx++) {
+            for (int cz = chunkZ - radius; cz <= chunkZ + radius; cz++) {
+                if (!world.getChunkManager().isChunkLoaded(cx, cz)) continue;
+                for (BlockEntity blockEntity : world.getChunk(cx, cz).getBlockEntities().values()) {
+                    if (blockEntity instanceof MagnetBlockEntity magnet && magnet.getCachedState().isOf(ModBlocks.MAGNET_BLOCK) && magnet.isEmitting()) magnets.add(magnet.getPos().asLong());
+                }
+            }
+        }
+        clusters.rebuild(magnets::forEach, magnets::contains);
+    }
+}
@@ -0,0 +1,157 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayerEntity;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+
+// Client side hum of magnets. Connected magnets with the same pitch share one looping sound placed at their centre,
+// louder the more magnets it stands for. Everything is derived from synced block states and the phantom list, the server sends nothing periodic
+public class MagnetHumManager {
+    // Конфиги
+    public static double HUM_DISTANCE = 24.0;
+    public static int RESCAN_INTERVAL = 10;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final float PHANTOM_VOLUME = 0.4F;
+    private static final float PHANTOM_PITCH = 0.7F;
+
+    // Networks by their lowest packed position, phantoms by id
+    private static final Long2ObjectOpenHashMap<MagnetHumSound> networkSounds = new Long2ObjectOpenHashMap<>();
+    private static final Int2ObjectOpenHashMap<MagnetHumSound> phantomSounds = new Int2ObjectOpenHashMap<>();
+    private static final Long2ObjectOpenHashMap<MagnetBlockEntity> magnets = new Long2ObjectOpenHashMap<>();
+    private static final LongOpenHashSet visited = new LongOpenHashSet();
+    private static final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+    private static ClientWorld lastWorld;
+
+    public static void tick(MinecraftClient client) {
+        ClientPlayerEntity player = client.player;
+        if (client.world == null || player == null) {
+            stopAll();
+            return;
+        }
+        if (client.world != lastWorld) {
+            stopAll();
+            lastWorld = client.world;
+        }
+        if (client.world.getTime() % RESCAN_INTERVAL != 0) return;
+        updateNetworks(client, client.world, player);
+        updatePhantoms(client, player);
+    }
+
+    public static void clear() {
+        stopAll();
+        lastWorld = null;
+    }
+
+    private static void updateNetworks(MinecraftClient client, ClientWorld world, ClientPlayerEntity player) {
+        collectMagnets(world, player);
+        LongOpenHashSet seen = new LongOpenHashSet();
+        for (Long2ObjectMap.Entry<MagnetBlockEntity> entry : magnets.long2ObjectEntrySet()) {
+            long start = entry.getLongKey();
+            if (visited.contains(start)) continue;
+            float pitch = entry.getValue().humPitch();
+            float volume = entry.getValue().humVolume();
+            long key = start;
+            double sumX = 0, sumY = 0, sumZ = 0;
+            int count = 0;
+            visited.add(start);
+            queue.enqueue(start);
+            while (!queue.isEmpty()) {
+                long packed = queue.dequeueLong();
+                key = Math.min(key, packed);
+                sumX += BlockPos.unpackLongX(packed);
+                sumY += BlockPos.unpackLongY(packed);
+                sumZ += BlockPos.unpackLongZ(packed);
+                count++;
+                for (Direction direction : DIRECTIONS) {
+                    long neighbor = BlockPos.offset(packed, direction);
+                    MagnetBlockEntity magnet = magnets.get(neighbor);
+                    if (magnet == null || visited.contains(neighbor) || magnet.humPitch() != pitch) continue;
+                    visited.add(neighbor);
+                    queue.enqueue(neighbor);
+                }
+            }
+            seen.add(key);
+            // Doubling the magnets adds a quarter of the single magnet volume
+            float networkVolume = Math.min(1.0F, volume * (1.0F + 0.25F * (float) (Math.log(count) / Math.log(2))));
+            play(client, networkSounds.get(key), key, sumX / count + 0.5, sumY / count + 0.5, sumZ / count + 0.5, networkVolume, pitch);
+        }
+        magnets.clear();
+        visited.clear();
+        for (ObjectIterator<Long2ObjectMap.Entry<MagnetHumSound>> it = networkSounds.long2ObjectEntrySet().iterator(); it.hasNext(); ) {
+            Long2ObjectMap.Entry<MagnetHumSound> entry = it.next();
+            if (seen.contains(entry.getLongKey()) && client.getSoundManager().isPlaying(entry.getValue())) continue;
+            entry.getValue().stop();
+            it.remove();
+        }
+    }
+
+    // Emitting magnets whose block entity is within hum distance of the player
+    private static void collectMagnets(ClientWorld world, ClientPlayerEntity player) {
+        double maxDistanceSquared = HUM_DISTANCE * HUM_DISTANCE;
+        int radius = ChunkSectionPos.getSectionCoord((int) Math.ceil(HUM_DISTANCE)) + 1;
+        int chunkX = player.getChunkPos().x, chunkZ = player.getChunkPos().z;
+        for (int cx = chunkX - radius; cx <= chunkX + radius; cx++) {
+            for (int cz = chunkZ - radius; cz <= chunkZ + radius; cz++) {
+                if (!world.getChunkManager().isChunkLoaded(cx, cz)) continue;
+                for (BlockEntity blockEntity : world.getChunk(cx, cz).getBlockEntities().values()) {
+                    if (!(blockEntity instanceof MagnetBlockEntity magnet) || !magnet.getCachedState().isOf(ModBlocks.MAGNET_BLOCK) || !magnet.isEmitting()) continue;
+                    BlockPos pos = magnet.getPos();
+                    if (player.squaredDistanceTo(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5) > maxDistanceSquared) continue;
+                    magnets.put(pos.asLong(), magnet);
+                }
+            }
+        }
+    }
+
+    private static void updatePhantoms(MinecraftClient client, ClientPlayerEntity player) {
+        Int2ObjectMap<PhantomMagnetManager.PhantomMagnet> phantoms = MagnetBlocksClient.getPhantoms();
+        double maxDistanceSquared = HUM_DISTANCE * HUM_DISTANCE;
+        for (ObjectIterator<Int2ObjectMap.Entry<MagnetHumSound>> it = phantomSounds.int2ObjectEntrySet().iterator(); it.hasNext(); ) {
+            Int2ObjectMap.Entry<MagnetHumSound> entry = it.next();
+            PhantomMagnetManager.PhantomMagnet magnet = phantoms.get(entry.getIntKey());
+            if (magnet != null && inRange(player, magnet.getPos(), maxDistanceSquared) && client.getSoundManager().isPlaying(entry.getValue())) continue;
+            entry.getValue().stop();
+            it.remove();
+        }
+        for (Int2ObjectMap.Entry<PhantomMagnetManager.PhantomMagnet> entry : phantoms.int2ObjectEntrySet()) {
+            BlockPos pos = entry.getValue().getPos();
+            if (phantomSounds.containsKey(entry.getIntKey()) || !inRange(player, pos, maxDistanceSquared)) continue;
+            MagnetHumSound sound = new MagnetHumSound(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5, PHANTOM_VOLUME, PHANTOM_PITCH);
+            phantomSounds.put(entry.getIntKey(), sound);
+            client.getSoundManager().play(sound);
+        }
+    }
+
+    private static boolean inRange(ClientPlayerEntity player, BlockPos pos, double maxDistanceSquared) {
+        return player.squaredDistanceTo(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5) <= maxDistanceSquared;
+    }
+
+    private static void play(MinecraftClient client, MagnetHumSound sound, long key, double x, double y, double z, float volume, float pitch) {
+        if (sound != null) {
+            sound.update(x, y, z, volume, pitch);
+            return;
+        }
+        sound = new MagnetHumSound(x, y, z, volume, pitch);
+        networkSounds.put(key, sound);
+        client.getSoundManager().play(sound);
+    }
+
+    private static void stopAll() {
+        networkSounds.values().forEach(MagnetHumSound::stop);
+        phantomSounds.values().forEach(MagnetHumSound::stop);
+        networkSounds.clear();
+        phantomSounds.clear();
+    }
+}
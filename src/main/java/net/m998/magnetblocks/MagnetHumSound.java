@@ -0,0 +1,35 @@
+package net.m998.magnetblocks;
+
+import net.minecraft.client.sound.MovingSoundInstance;
+import net.minecraft.client.sound.SoundInstance;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvents;
+
+// Looping beacon hum of one magnet network or phantom magnet, moved and retuned by MagnetHumManager instead of being restarted
+public class MagnetHumSound extends MovingSoundInstance {
+    private boolean stopped;
+
+    MagnetHumSound(double x, double y, double z, float volume, float pitch) {
+        super(SoundEvents.BLOCK_BEACON_AMBIENT, SoundCategory.BLOCKS, SoundInstance.createRandom());
+        this.repeat = true;
+        this.repeatDelay = 0;
+        update(x, y, z, volume, pitch);
+    }
+
+    void update(double x, double y, double z, float volume, float pitch) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.volume = volume;
+        this.pitch = pitch;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void tick() {
+        if (stopped) setDone();
+    }
+}
@@ -0,0 +1,180 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Packets of the mod, the client side lives in MagnetBlocksClient
+public class MagnetNetworking {
+    public static final Identifier FIELD_TRAILS = new Identifier(MagnetBlocksMod.MOD_ID, "field_trails");
+    public static final Identifier PHANTOM_MAGNETS = new Identifier(MagnetBlocksMod.MOD_ID, "phantom_magnets");
+    public static final Identifier PREDICTION_SESSION = new Identifier(MagnetBlocksMod.MOD_ID, "prediction_session");
+    public static final Identifier PREDICTION_CORRECTION = new Identifier(MagnetBlocksMod.MOD_ID, "prediction_correction");
+    // Client to server
+    public static final Identifier PREDICTION_REPORT = new Identifier(MagnetBlocksMod.MOD_ID, "prediction_report");
+    // Конфиги
+    public static double TRAIL_DISTANCE = 48.0;
+    public static int TRAIL_INTERVAL = 2;
+    public static int MAX_TRAILS_PER_PACKET = 64;
+    public static int MAX_PHANTOMS_PER_PACKET = 512;
+
+    // Trail record: x, y, z, impulse x, y, z, flags (MagneticFieldSnapshot.FLAG_*)
+    public static final int TRAIL_STRIDE = 7;
+
+    // Phantom magnets each client holds
+    private static final Map<ServerPlayerEntity, PhantomView> PHANTOM_VIEWS = new WeakHashMap<>();
+
+    // One packet per player with the trails near them, nothing is sent to players without trails in range
+    public static void sendTrails(ServerWorld world, DoubleArrayList trails) {
+        if (trails.isEmpty()) return;
+        double maxDistanceSquared = TRAIL_DISTANCE * TRAIL_DISTANCE;
+        for (ServerPlayerEntity player : world.getPlayers()) {
+            PacketByteBuf buf = null;
+            int count = 0;
+            for (int i = 0; i < trails.size() && count < MAX_TRAILS_PER_PACKET; i += TRAIL_STRIDE) {
+                if (player.squaredDistanceTo(trails.getDouble(i), trails.getDouble(i + 1), trails.getDouble(i + 2)) > maxDistanceSquared) continue;
+                if (buf == null) buf = PacketByteBufs.create();
+                for (int j = 0; j < 6; j++) buf.writeFloat((float) trails.getDouble(i + j));
+                buf.writeByte((int) trails.getDouble(i + 6));
+                count++;
+            }
+            if (buf == null) continue;
+            PacketByteBuf packet = PacketByteBufs.create();
+            packet.writeVarInt(count);
+            packet.writeBytes(buf);
+            ServerPlayNetworking.send(player, FIELD_TRAILS, packet);
+        }
+    }
+
+    // Sends each player the changes to the phantom magnets whose radius reaches the chunks they track. A player new to the world gets
+    // the whole list and a player who moved to another chunk gets the difference
+    public static void syncPhantoms(MinecraftServer server, PhantomMagnetManager manager) {
+        IntOpenHashSet changed = manager.consumeChangedIds();
+        boolean reset = manager.consumeSyncReset();
+        PhantomMagnetStore magnets = manager.getMagnets();
+        int viewDistance = server.getPlayerManager().getViewDistance();
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            RegistryKey<World> dimension = player.getWorld().getRegistryKey();
+            MagnetEmitterRegistry registry = MagnetEmitterRegistry.get(player.getServerWorld());
+            ChunkPos chunk = player.getChunkPos();
+            PhantomView view = PHANTOM_VIEWS.get(player);
+            boolean newView = reset || view == null || view.dimension != dimension;
+            if (newView) {
+                view = new PhantomView(dimension);
+                PHANTOM_VIEWS.put(player, view);
+            }
+            IntArrayList removed = new IntArrayList(), updated = new IntArrayList();
+            if (newView || view.chunkX != chunk.x || view.chunkZ != chunk.z || view.distance != viewDistance) {
+                view.chunkX = chunk.x;
+                view.chunkZ = chunk.z;
+                view.distance = viewDistance;
+                IntOpenHashSet visible = new IntOpenHashSet();
+                registry.forEachPhantomReaching(view.chunkX - view.distance, view.chunkZ - view.distance, view.chunkX + view.distance,
+                        view.chunkZ + view.distance, visible::add);
+                for (IntIterator it = view.known.iterator(); it.hasNext(); ) {
+                    int id = it.nextInt();
+                    if (!visible.contains(id)) removed.add(id);
+                }
+                for (IntIterator it = visible.iterator(); it.hasNext(); ) {
+                    int id = it.nextInt();
+                    if (!view.known.contains(id) || changed.contains(id)) updated.add(id);
+                }
+                view.known.clear();
+                view.known.addAll(visible);
+            } else {
+                for (IntIterator it = changed.iterator(); it.hasNext(); ) {
+                    int id = it.nextInt();
+                    if (registry.phantomReaches(id, view.chunkX - view.distance, view.chunkZ - view.distance, view.chunkX + view.distance,
+                            view.chunkZ + view.distance)) {
+                        view.known.add(id);
+                        updated.add(id);
+                    } else if (view.known.remove(id)) {
+                        removed.add(id);
+                    }
+                }
+            }
+            if (newView || !removed.isEmpty() || !updated.isEmpty()) sendPhantoms(player, dimension, newView, removed, updated, magnets);
+        }
+    }
+
+    // Players without a view get the whole list at the next tick, which also covers join, respawn and world change
+    public static void resetPhantoms(ServerPlayerEntity player) {
+        PHANTOM_VIEWS.remove(player);
+    }
+
+    // Removals, then additions and updates, at most MAX_PHANTOMS_PER_PACKET of them per packet. Only the first packet of a reset clears the list
+    private static void sendPhantoms(ServerPlayerEntity player, RegistryKey<World> dimension, boolean reset, IntArrayList removed, IntArrayList updated,
+                                     PhantomMagnetStore magnets) {
+        int removedAt = 0, updatedAt = 0;
+        do {
+            int removedCount = Math.min(removed.size() - removedAt, MAX_PHANTOMS_PER_PACKET);
+            int updatedCount = Math.min(updated.size() - updatedAt, MAX_PHANTOMS_PER_PACKET - removedCount);
+            PacketByteBuf buf = PacketByteBufs.create();
+            buf.writeRegistryKey(dimension);
+            buf.writeBoolean(reset);
+            buf.writeVarInt(removedCount);
+            for (int i = 0; i < removedCount; i++) buf.writeVarInt(removed.getInt(removedAt++));
+            buf.writeVarInt(updatedCount);
+            for (int i = 0; i < updatedCount; i++) {
+                int id = updated.getInt(updatedAt++);
+                int slot = magnets.slot(id);
+                buf.writeVarInt(id);
+                buf.writeBlockPos(magnets.getPos(slot));
+                buf.writeDouble(magnets.getRadius(slot));
+                buf.writeDouble(magnets.getForceMultiplier(slot));
+                buf.writeBoolean(magnets.isAttracting(slot));
+            }
+            ServerPlayNetworking.send(player, PHANTOM_MAGNETS, buf);
+            reset = false;
+        } while (removedAt < removed.size() || updatedAt < updated.size());
+    }
+
+    public static void registerServerReceivers() {
+        ServerPlayNetworking.registerGlobalReceiver(PREDICTION_REPORT, (server, player, handler, buf, responseSender) -> {
+            int session = buf.readVarInt();
+            double x = buf.readDouble(), y = buf.readDouble(), z = buf.readDouble();
+            double vx = buf.readFloat(), vy = buf.readFloat(), vz = buf.readFloat();
+            server.execute(() -> MagnetPrediction.onReport(player, session, x, y, z, vx, vy, vz));
+        });
+    }
+
+    // Session id and the strength multiplier of the player, 0 when magnets do not pull them
+    public static void sendPredictionSession(ServerPlayerEntity player, int session, double strength) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(session);
+        buf.writeDouble(strength);
+        ServerPlayNetworking.send(player, PREDICTION_SESSION, buf);
+    }
+
+    public static void sendCorrection(ServerPlayerEntity player, int session, double dx, double dy, double dz) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(session);
+        buf.writeDouble(dx);
+        buf.writeDouble(dy);
+        buf.writeDouble(dz);
+        ServerPlayNetworking.send(player, PREDICTION_CORRECTION, buf);
+    }
+
+    private static class PhantomView {
+        private final RegistryKey<World> dimension;
+        private final IntOpenHashSet known = new IntOpenHashSet();
+        private int chunkX, chunkZ, distance;
+
+        PhantomView(RegistryKey<World> dimension) {
+            this.dimension = dimension;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.state.property.BooleanProperty;
+import net.minecraft.sound.SoundEvents;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Connected magnets of a world, powered while any member receives redstone power
+public class MagnetNetworks {
+    // Конфиги
+    public static double APPLY_BUDGET_MS = 1.0;
+    private static final int WRITE_BATCH = 1024;
+
+    private static final Map<ServerWorld, MagnetNetworks> NETWORKS = new WeakHashMap<>();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ServerWorld world;
+    private final Long2ObjectOpenHashMap<Network> networkOf = new Long2ObjectOpenHashMap<>();
+    // Members powered themselves
+    private final LongOpenHashSet locallyPowered = new LongOpenHashSet();
+    private final ReferenceOpenHashSet<Network> dirty = new ReferenceOpenHashSet<>();
+    private final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+    // Members whose POWERED state may differ from their network
+    private final LongArrayFIFOQueue backlog = new LongArrayFIFOQueue();
+    private final LongOpenHashSet queued = new LongOpenHashSet();
+    private int networkCount = 0;
+
+    private MagnetNetworks(ServerWorld world) {
+        this.world = world;
+    }
+
+    public static MagnetNetworks get(ServerWorld world) {
+        return NETWORKS.computeIfAbsent(world, MagnetNetworks::new);
+    }
+
+    public static void tick(ServerWorld world) {
+        MagnetNetworks networks = NETWORKS.get(world);
+        if (networks == null) return;
+        if (!networks.dirty.isEmpty()) networks.queueDirty();
+        if (!networks.backlog.isEmpty()) networks.drainBacklog();
+    }
+
+    public static void onChunkLoad(ServerWorld world, WorldChunk chunk) {
+        MagnetNetworks networks = null;
+        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+            if (!(blockEntity instanceof MagnetBlockEntity)) continue;
+            if (networks == null) networks = get(world);
+            networks.add(blockEntity.getPos().asLong(), false);
+        }
+    }
+
+    public static void onChunkUnload(ServerWorld world, WorldChunk chunk) {
+        MagnetNetworks networks = NETWORKS.get(world);
+        if (networks == null || networks.networkOf.isEmpty()) return;
+        LongArrayList removed = new LongArrayList();
+        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+            if (blockEntity instanceof MagnetBlockEntity) removed.add(blockEntity.getPos().asLong());
+        }
+        if (!removed.isEmpty()) networks.remove(removed, false);
+    }
+
+    // Placed magnets take the network's power, loaded ones keep theirs
+    public void add(long packed, boolean placed) {
+        if (networkOf.containsKey(packed)) return;
+        Network network = new Network(packed, !placed);
+        networkOf.put(packed, network);
+        networkCount++;
+        if (placed && receivesPower(packed)) {
+            locallyPowered.add(packed);
+            network.poweredMembers = 1;
+        }
+        for (Direction direction : DIRECTIONS) {
+            Network neighbor = networkOf.get(BlockPos.offset(packed, direction));
+            if (neighbor != null && neighbor != network) network = merge(network, neighbor);
+        }
+        if (placed) dirty.add(network);
+    }
+
+    public void remove(long packed) {
+        LongArrayList removed = new LongArrayList(1);
+        removed.add(packed);
+        remove(removed, true);
+    }
+
+    // Splits each network that lost members once
+    private void remove(LongArrayList removed, boolean broken) {
+        ReferenceOpenHashSet<Network> affected = new ReferenceOpenHashSet<>();
+        for (int i = 0; i < removed.size(); i++) {
+            Network network = networkOf.remove(removed.getLong(i));
+            if (network == null) continue;
+            locallyPowered.remove(removed.getLong(i));
+            affected.add(network);
+        }
+        for (Network network : affected) {
+            dirty.remove(network);
+            networkCount--;
+            LongArrayList members = network.members;
+            for (int i = 0; i < members.size(); i++) {
+                long start = members.getLong(i);
+                if (networkOf.get(start) != network) continue;
+                Network part = new Network(network.uncounted);
+                relabel(start, network, part);
+                networkCount++;
+                if (broken) dirty.add(part);
+            }
+        }
+    }
+
+    // Flood fill over members still labelled with the old network
+    private void relabel(long start, Network from, Network to) {
+        networkOf.put(start, to);
+        queue.enqueue(start);
+        while (!queue.isEmpty()) {
+            long packed = queue.dequeueLong();
+            to.members.add(packed);
+            if (locallyPowered.contains(packed)) to.poweredMembers++;
+            for (Direction direction : DIRECTIONS) {
+                long neighbor = BlockPos.offset(packed, direction);
+                if (networkOf.get(neighbor) != from) continue;
+                networkOf.put(neighbor, to);
+                queue.enqueue(neighbor);
+            }
+        }
+    }
+
+    private Network merge(Network a, Network b) {
+        Network large = a.members.size() >= b.members.size() ? a : b, small = large == a ? b : a;
+        LongArrayList members = small.members;
+        for (int i = 0; i < members.size(); i++) networkOf.put(members.getLong(i), large);
+        large.members.addAll(members);
+        large.poweredMembers += small.poweredMembers;
+        large.uncounted |= small.uncounted;
+        if (dirty.remove(small)) dirty.add(large);
+        networkCount--;
+        return large;
+    }
+
+    // Reads only the member's own redstone input
+    public void onNeighborUpdate(BlockPos magnetPos, BlockState state) {
+        long packed = magnetPos.asLong();
+        Network network = networkOf.get(packed);
+        if (network == null) return;
+        if (network.uncounted) count(network);
+        boolean powered = receivesPower(packed);
+        if (powered ? locallyPowered.add(packed) : locallyPowered.remove(packed)) {
+            network.poweredMembers += powered ? 1 : -1;
+            dirty.add(network);
+            if (!powered && network.poweredMembers == 0) world.playSound(null, magnetPos, SoundEvents.BLOCK_BEACON_AMBIENT, SoundCategory.BLOCKS, 0.5F, 0.8F);
+        } else if (state.get(MagnetBlock.POWERED) != network.poweredMembers > 0) {
+            dirty.add(network);
+        }
+    }
+
+    // Networks from loaded chunks read every member once
+    private void count(Network network) {
+        network.uncounted = false;
+        network.poweredMembers = 0;
+        LongArrayList members = network.members;
+        for (int i = 0; i < members.size(); i++) {
+            long packed = members.getLong(i);
+            if (receivesPower(packed)) {
+                locallyPowered.add(packed);
+                network.poweredMembers++;
+            } else {
+                locallyPowered.remove(packed);
+            }
+        }
+    }
+
+    // Unloaded neighbours count as unpowered
+    private boolean receivesPower(long packed) {
+        int x = BlockPos.unpackLongX(packed), z = BlockPos.unpackLongZ(packed);
+        int minX = ChunkSectionPos.getSectionCoord(x - 1), maxX = ChunkSectionPos.getSectionCoord(x + 1);
+        int minZ = ChunkSectionPos.getSectionCoord(z - 1), maxZ = ChunkSectionPos.getSectionCoord(z + 1);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) if (!world.getChunkManager().isChunkLoaded(cx, cz)) return false;
+        }
+        return world.isReceivingRedstonePower(BlockPos.fromLong(packed));
+    }
+
+    private void queueDirty() {
+        for (Network network : dirty) {
+            if (network.uncounted) continue;
+            LongArrayList members = network.members;
+            for (int i = 0; i < members.size(); i++) {
+                long packed = members.getLong(i);
+                if (queued.add(packed)) backlog.enqueue(packed);
+            }
+        }
+        dirty.clear();
+    }
+
+    // Compared with the network when reached, so merges and splits are picked up
+    private void drainBacklog() {
+        long deadline = System.nanoTime() + (long) (APPLY_BUDGET_MS * 1_000_000L);
+        LongArrayList powered = new LongArrayList(), unpowered = new LongArrayList();
+        while (!backlog.isEmpty()) {
+            long packed = backlog.dequeueLong();
+            queued.remove(packed);
+            Network network = networkOf.get(packed);
+            if (network == null || network.uncounted) continue;
+            (network.poweredMembers > 0 ? powered : unpowered).add(packed);
+            if (powered.size() + unpowered.size() < WRITE_BATCH) continue;
+            writeStates(powered, MagnetBlock.POWERED, true);
+            writeStates(unpowered, MagnetBlock.POWERED, false);
+            powered.clear();
+            unpowered.clear();
+            if (System.nanoTime() > deadline) break;
+        }
+        writeStates(powered, MagnetBlock.POWERED, true);
+        writeStates(unpowered, MagnetBlock.POWERED, false);
+    }
+
+    // Writes straight into the chunk sections, skipping unloaded chunks. Returns the number of magnets that changed
+    private int writeStates(LongArrayList positions, BooleanProperty property, boolean value) {
+        if (positions.isEmpty()) return 0;
+        Long2ObjectOpenHashMap<LongArrayList> bySection = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < positions.size(); i++) {
+            long packed = positions.getLong(i);
+            bySection.computeIfAbsent(ChunkSectionPos.fromBlockPos(packed), key -> new LongArrayList()).add(packed);
+        }
+        LongArrayList changed = new LongArrayList();
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (Long2ObjectMap.Entry<LongArrayList> entry : bySection.long2ObjectEntrySet()) {
+            long sectionKey = entry.getLongKey();
+            WorldChunk chunk = world.getChunkManager().getWorldChunk(ChunkSectionPos.unpackX(sectionKey), ChunkSectionPos.unpackZ(sectionKey));
+            if (chunk == null) continue;
+            ChunkSection section = chunk.getSection(chunk.sectionCoordToIndex(ChunkSectionPos.unpackY(sectionKey)));
+            LongArrayList members = entry.getValue();
+            int sectionChanged = 0;
+            for (int i = 0; i < members.size(); i++) {
+                pos.set(members.getLong(i));
+                int x = pos.getX() & 15, y = pos.getY() & 15, z = pos.getZ() & 15;
+                BlockState state = section.getBlockState(x, y, z);
+                if (!(state.getBlock() instanceof MagnetBlock) || state.get(property) == value) continue;
+                BlockState newState = state.with(property, value);
+                section.setBlockState(x, y, z, newState);
+                if (chunk.getBlockEntity(pos) instanceof MagnetBlockEntity magnet) magnet.setCachedState(newState);
+                world.getChunkManager().markForUpdate(pos);
+                changed.add(pos.asLong());
+                sectionChanged++;
+            }
+            if (sectionChanged > 0) chunk.setNeedsSaving(true);
+        }
+        if (changed.isEmpty()) return 0;
+        MagneticFieldEngine engine = MagneticFieldEngine.get(world);
+        for (int i = 0; i < changed.size(); i++) {
+            notifyNeighbors(changed.getLong(i));
+            engine.onMagnetChanged(BlockPos.fromLong(changed.getLong(i)));
+        }
+        return changed.size();
+    }
+
+    // Shape updates only, as setBlockState(pos, state, 2) sends, skipping members and unloaded chunks
+    private void notifyNeighbors(long packed) {
+        BlockPos pos = BlockPos.fromLong(packed);
+        BlockPos.Mutable neighborPos = new BlockPos.Mutable();
+        BlockState state = world.getBlockState(pos);
+        for (Direction direction : DIRECTIONS) {
+            neighborPos.set(pos, direction);
+            if (networkOf.containsKey(neighborPos.asLong())) continue;
+            if (!world.getChunkManager().isChunkLoaded(ChunkSectionPos.getSectionCoord(neighborPos.getX()), ChunkSectionPos.getSectionCoord(neighborPos.getZ()))) continue;
+            world.replaceWithStateForNeighborUpdate(direction.getOpposite(), state, neighborPos, pos, Block.NOTIFY_LISTENERS, 511);
+        }
+    }
+
+    public int getBacklog() {
+        return backlog.size();
+    }
+
+    public int getNetworkCount() {
+        return networkCount;
+    }
+
+    // Returns the number of magnets that changed
+    public int setPolarity(BlockPos magnetPos, boolean attracting) {
+        Network network = networkOf.get(magnetPos.asLong());
+        return network != null ? writeStates(network.members, MagnetBlock.ATTRACTING, attracting) : 0;
+    }
+
+    private static class Network {
+        private final LongArrayList members = new LongArrayList();
+        private int poweredMembers;
+        // Redstone input of the members is not known yet
+        private boolean uncounted;
+
+        Network(boolean uncounted) {
+            this.uncounted = uncounted;
+        }
+
+        Network(long member, boolean uncounted) {
+            this(uncounted);
+            members.add(member);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.m998.magnetblocks;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.entity.Entity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Players whose client predicts the magnet pull on itself (MagnetFieldPredictor). The server leaves their velocity alone,
+// keeps the running total of the impulses it computed and compares it with the totals the client reports. A correction is sent
+// only when the two drift apart by more than the tolerance plus what a steady pull covers during LAG_ALLOWANCE_TICKS.
+// The pull itself is computed from the position delta the server sees, the reported velocity is only the base the totals are reconciled against
+public class MagnetPrediction {
+    // Конфиги
+    public static boolean ENABLED = true;
+    public static double CORRECTION_TOLERANCE = 0.3;
+    public static int LAG_ALLOWANCE_TICKS = 10;
+
+    private static final Map<ServerPlayerEntity, Session> SESSIONS = new WeakHashMap<>();
+    private static int nextSession = 1;
+
+    // Called when the client registers the prediction channels, on respawn and on dimension change; the client restarts its totals
+    public static void start(ServerPlayerEntity player) {
+        if (!ENABLED || !ServerPlayNetworking.canSend(player, MagnetNetworking.PREDICTION_SESSION)) {
+            SESSIONS.remove(player);
+            return;
+        }
+        Session session = new Session(nextSession++, strengthOf(player), player);
+        SESSIONS.put(player, session);
+        MagnetNetworking.sendPredictionSession(player, session.id, session.strength);
+    }
+
+    public static void stop(ServerPlayerEntity player) {
+        SESSIONS.remove(player);
+    }
+
+    // Strength is cached, so this only sends after equipment, game mode or whitelist changes
+    public static void tick(MinecraftServer server) {
+        if (SESSIONS.isEmpty()) return;
+        for (Map.Entry<ServerPlayerEntity, Session> entry : SESSIONS.entrySet()) {
+            Session session = entry.getValue();
+            session.track(entry.getKey());
+            double strength = strengthOf(entry.getKey());
+            if (strength == session.strength) continue;
+            session.strength = strength;
+            MagnetNetworking.sendPredictionSession(entry.getKey(), session.id, strength);
+        }
+    }
+
+    private static double strengthOf(ServerPlayerEntity player) {
+        double strength = MagneticStrengthCache.getStrength(player);
+        return strength > 0 ? MagneticForceKernel.strengthMultiplier(strength) : 0.0;
+    }
+
+    static boolean isPredicting(Entity entity) {
+        return entity instanceof ServerPlayerEntity player && SESSIONS.containsKey(player);
+    }
+
+    // Movement over the last tick as the server saw it, the server side velocity of a player does not follow its movement
+    static double[] getVelocity(Entity entity) {
+        Session session = SESSIONS.get(entity);
+        return session != null ? session.movement : null;
+    }
+
+    // Velocity the client last reported, clamped to MAX_SPEED. Only used as the base of the recorded totals
+    static double[] getReportedVelocity(Entity entity) {
+        Session session = SESSIONS.get(entity);
+        return session != null ? session.velocity : null;
+    }
+
+    // Velocity change the server would have applied this tick
+    static void record(Entity entity, double dx, double dy, double dz) {
+        Session session = SESSIONS.get(entity);
+        if (session == null) return;
+        session.serverX += dx;
+        session.serverY += dy;
+        session.serverZ += dz;
+        session.lastStep = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    static void onReport(ServerPlayerEntity player, int id, double x, double y, double z, double vx, double vy, double vz) {
+        Session session = SESSIONS.get(player);
+        if (session == null || session.id != id) return;
+        if (!Double.isFinite(vx) || !Double.isFinite(vy) || !Double.isFinite(vz)) vx = vy = vz = 0.0;
+        double scale = MagneticForceKernel.clampScale(vx, vy, vz);
+        session.velocity[0] = vx * scale;
+        session.velocity[1] = vy * scale;
+        session.velocity[2] = vz * scale;
+        double dx = session.serverX - x - session.correctedX, dy = session.serverY - y - session.correctedY, dz = session.serverZ - z - session.correctedZ;
+        double tolerance = CORRECTION_TOLERANCE + LAG_ALLOWANCE_TICKS * session.lastStep;
+        if (dx * dx + dy * dy + dz * dz <= tolerance * tolerance) return;
+        session.correctedX += dx;
+        session.correctedY += dy;
+        session.correctedZ += dz;
+        MagnetNetworking.sendCorrection(player, id, dx, dy, dz);
+    }
+
+    private static class Session {
+        private final int id;
+        private double strength;
+        private final double[] velocity = new double[3];
+        private final double[] movement = new double[3];
+        private double lastX, lastY, lastZ;
+        // Totals since the session started: computed here, and already sent as corrections
+        private double serverX, serverY, serverZ;
+        private double correctedX, correctedY, correctedZ;
+        private double lastStep;
+
+        Session(int id, double strength, ServerPlayerEntity player) {
+            this.id = id;
+            this.strength = strength;
+            lastX = player.getX();
+            lastY = player.getY();
+            lastZ = player.getZ();
+        }
+
+        private void track(ServerPlayerEntity player) {
+            movement[0] = player.getX() - lastX;
+            movement[1] = player.getY() - lastY;
+            movement[2] = player.getZ() - lastZ;
+            lastX = player.getX();
+            lastY = player.getY();
+            lastZ = player.getZ();
+        }
+    }
+}
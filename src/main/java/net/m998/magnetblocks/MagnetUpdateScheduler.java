@@ -0,0 +1,121 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import java.util.List;
+
+// Distance based update cadence and the per-tick time budget of the field pass
+public class MagnetUpdateScheduler {
+    // Конфиги
+    public static double TICK_BUDGET_MS = 4.0;
+    public static final int MAX_CATCH_UP_TICKS = 8;
+    private static final double NEAR_DISTANCE = 32.0;
+    private static final double MEDIUM_DISTANCE = 64.0;
+    private static final double FAR_DISTANCE = 128.0;
+    private static final long MISSING = Long.MIN_VALUE;
+    private static final int PRUNE_INTERVAL = 200;
+
+    private final Long2LongOpenHashMap blockUpdates = new Long2LongOpenHashMap();
+    private final Int2LongOpenHashMap phantomUpdates = new Int2LongOpenHashMap();
+    private double[] players = new double[12];
+    private int playerCount;
+    private long now;
+    private long deadline;
+    // Emitters of groups cut off by the budget
+    private final LongOpenHashSet deferredBlocks = new LongOpenHashSet();
+    private final IntOpenHashSet deferredPhantoms = new IntOpenHashSet();
+    private int deferredGroups;
+
+    public MagnetUpdateScheduler() {
+        blockUpdates.defaultReturnValue(MISSING);
+        phantomUpdates.defaultReturnValue(MISSING);
+    }
+
+    public void beginTick(ServerWorld world) {
+        now = world.getTime();
+        deadline = System.nanoTime() + (long) (TICK_BUDGET_MS * 1_000_000L);
+        List<ServerPlayerEntity> worldPlayers = world.getPlayers();
+        if (players.length < worldPlayers.size() * 3) players = new double[worldPlayers.size() * 3];
+        playerCount = 0;
+        for (ServerPlayerEntity player : worldPlayers) {
+            if (player.isSpectator()) continue;
+            players[playerCount * 3] = player.getX();
+            players[playerCount * 3 + 1] = player.getY();
+            players[playerCount * 3 + 2] = player.getZ();
+            playerCount++;
+        }
+        if (now % PRUNE_INTERVAL == 0) {
+            for (LongIterator it = blockUpdates.values().iterator(); it.hasNext(); ) if (now - it.nextLong() > PRUNE_INTERVAL) it.remove();
+            for (LongIterator it = phantomUpdates.values().iterator(); it.hasNext(); ) if (now - it.nextLong() > PRUNE_INTERVAL) it.remove();
+        }
+    }
+
+    // Impulse multiplier, 0 when not due
+    public int dueScale(long key, boolean phantom, double x, double y, double z, double range) {
+        int cadence = cadence(x, y, z, range);
+        long last = phantom ? phantomUpdates.get((int) key) : blockUpdates.get(key);
+        if (last == MISSING) {
+            last = now - 1 - Math.floorMod(HashCommon.mix(key), cadence);
+            if (phantom) phantomUpdates.put((int) key, last);
+            else blockUpdates.put(key, last);
+        }
+        long elapsed = now - last;
+        if (elapsed < cadence) return 0;
+        return (int) Math.min(elapsed, MAX_CATCH_UP_TICKS);
+    }
+
+    public void markUpdated(long key, boolean phantom) {
+        if (phantom) phantomUpdates.put((int) key, now);
+        else blockUpdates.put(key, now);
+    }
+
+    public void forget(long key, boolean phantom) {
+        if (phantom) phantomUpdates.remove((int) key);
+        else blockUpdates.remove(key);
+    }
+
+    private int cadence(double x, double y, double z, double range) {
+        double nearest = Double.MAX_VALUE;
+        for (int i = 0; i < playerCount; i++) {
+            double dx = players[i * 3] - x, dy = players[i * 3 + 1] - y, dz = players[i * 3 + 2] - z;
+            nearest = Math.min(nearest, dx * dx + dy * dy + dz * dz);
+        }
+        double distance = playerCount == 0 ? Double.MAX_VALUE : Math.max(0.0, Math.sqrt(nearest) - range);
+        if (distance <= NEAR_DISTANCE) return 1;
+        if (distance <= MEDIUM_DISTANCE) return 2;
+        if (distance <= FAR_DISTANCE) return 4;
+        return MAX_CATCH_UP_TICKS;
+    }
+
+    public boolean wasDeferred(long key, boolean phantom) {
+        return phantom ? deferredPhantoms.contains((int) key) : deferredBlocks.contains(key);
+    }
+
+    // After the groups of this tick are ordered
+    public void clearDeferred() {
+        deferredBlocks.clear();
+        deferredPhantoms.clear();
+        deferredGroups = 0;
+    }
+
+    public void defer(long key, boolean phantom) {
+        if (phantom) deferredPhantoms.add((int) key);
+        else deferredBlocks.add(key);
+    }
+
+    public void countDeferredGroup() {
+        deferredGroups++;
+    }
+
+    public boolean isOverBudget() {
+        return System.nanoTime() > deadline;
+    }
+
+    public int getDeferredGroups() { return deferredGroups; }
+}
@@ -0,0 +1,85 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+
+// Sums the velocity change made by magnets per entity and sends it once it is large enough or a resync is due
+public class MagnetVelocitySync {
+    // Конфиги
+    public static double SYNC_THRESHOLD = 0.05;
+    public static double PLAYER_SYNC_THRESHOLD = 0.02;
+    public static int RESYNC_INTERVAL = 10;
+
+    private final Reference2ObjectOpenHashMap<Entity, Pending> pending = new Reference2ObjectOpenHashMap<>();
+    private int flagged;
+    private int syncedLastTick;
+
+    // Once per entity and tick
+    void record(Entity entity, double dx, double dy, double dz, long time) {
+        Pending state = pending.get(entity);
+        if (state == null) {
+            state = new Pending(time);
+            pending.put(entity, state);
+        }
+        state.x += dx;
+        state.y += dy;
+        state.z += dz;
+        state.touched = time;
+        double threshold = entity instanceof PlayerEntity ? PLAYER_SYNC_THRESHOLD : SYNC_THRESHOLD;
+        if (state.x * state.x + state.y * state.y + state.z * state.z >= threshold * threshold || time - state.synced >= RESYNC_INTERVAL) sync(entity, state, time);
+    }
+
+    // Flushes and forgets entities not pushed this tick
+    void endTick(long time) {
+        if (pending.isEmpty() && flagged == 0) {
+            syncedLastTick = 0;
+            return;
+        }
+        for (ObjectIterator<Reference2ObjectMap.Entry<Entity, Pending>> it = pending.reference2ObjectEntrySet().iterator(); it.hasNext(); ) {
+            Reference2ObjectMap.Entry<Entity, Pending> entry = it.next();
+            Pending state = entry.getValue();
+            if (state.touched == time) continue;
+            if (!entry.getKey().isRemoved() && state.hasChange()) {
+                entry.getKey().velocityModified = true;
+                flagged++;
+            }
+            it.remove();
+        }
+        syncedLastTick = flagged;
+        flagged = 0;
+    }
+
+    private void sync(Entity entity, Pending state, long time) {
+        if (state.hasChange()) {
+            entity.velocityModified = true;
+            flagged++;
+        }
+        state.x = state.y = state.z = 0.0;
+        state.synced = time;
+    }
+
+    public int getTracked() {
+        return pending.size();
+    }
+
+    public int getSyncedLastTick() {
+        return syncedLastTick;
+    }
+
+    private static class Pending {
+        private double x, y, z;
+        private long synced;
+        private long touched;
+
+        Pending(long time) {
+            this.synced = time;
+        }
+
+        boolean hasChange() {
+            return x != 0.0 || y != 0.0 || z != 0.0;
+        }
+    }
+}
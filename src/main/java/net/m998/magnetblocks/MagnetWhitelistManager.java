@@ -22,12 +22,16 @@ public class MagnetWhitelistManager extends PersistentState {
 
     public void addPlayer(UUID playerUUID, double strength) {
         whitelist.put(playerUUID, new WhitelistEntry(playerUUID, strength));
+        MagneticStrengthCache.invalidateAll();
         this.markDirty();
     }
 
     public boolean removePlayer(UUID playerUUID) {
         boolean removed = whitelist.remove(playerUUID) != null;
-        if (removed) this.markDirty();
+        if (removed) {
+            MagneticStrengthCache.invalidateAll();
+            this.markDirty();
+        }
         return removed;
     }
 
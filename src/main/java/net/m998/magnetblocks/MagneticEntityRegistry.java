@@ -0,0 +1,136 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.item.Item;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+// Entities of a world that a magnet can currently move, kept up to date from load, unload and equipment events.
+// Players are always members since game mode and whitelist are checked live, falling blocks are decided once at spawn.
+// Items are re-decided when a query reaches them and their stack turned into another item, /data can swap it after spawn
+public class MagneticEntityRegistry {
+    private static final Map<ServerWorld, MagneticEntityRegistry> REGISTRIES = new WeakHashMap<>();
+
+    private final ServerWorld world;
+    private final ReferenceOpenHashSet<Entity> members = new ReferenceOpenHashSet<>();
+    // Members by chunk section, rebuilt once per tick on first query since members move every tick
+    private final Long2ObjectOpenHashMap<List<Entity>> sections = new Long2ObjectOpenHashMap<>();
+    private long bucketTime = Long.MIN_VALUE;
+    // Every loaded item entity with the item its membership was decided for
+    private final Reference2ReferenceOpenHashMap<ItemEntity, Item> items = new Reference2ReferenceOpenHashMap<>();
+
+    private MagneticEntityRegistry(ServerWorld world) {
+        this.world = world;
+    }
+
+    public static MagneticEntityRegistry get(ServerWorld world) {
+        return REGISTRIES.computeIfAbsent(world, MagneticEntityRegistry::new);
+    }
+
+    public static void onEntityLoad(Entity entity, ServerWorld world) {
+        MagnetCaptures.release(entity);
+        if (!MagneticStrengthCache.isMagneticType(entity)) return;
+        if (entity instanceof ItemEntity item) get(world).items.put(item, item.getStack().getItem());
+        if (get(world).refresh(entity)) MagneticFieldEngine.get(world).wakeAround(entity.getX(), entity.getY(), entity.getZ());
+    }
+
+    public static void onEntityUnload(Entity entity, ServerWorld world) {
+        MagnetCaptures.release(entity);
+        MagneticStrengthCache.invalidate(entity);
+        MagneticEntityRegistry registry = REGISTRIES.get(world);
+        if (registry == null) return;
+        registry.members.remove(entity);
+        if (entity instanceof ItemEntity) registry.items.remove(entity);
+    }
+
+    public static void onEquipmentChange(Entity entity) {
+        MagneticStrengthCache.invalidate(entity);
+        if (!(entity.getWorld() instanceof ServerWorld world) || entity.isRemoved()) return;
+        if (get(world).refresh(entity)) MagneticFieldEngine.get(world).wakeAround(entity.getX(), entity.getY(), entity.getZ());
+    }
+
+    // Returns true when the entity is a member afterwards
+    private boolean refresh(Entity entity) {
+        MagneticStrengthCache.StrengthKind kind = MagneticStrengthCache.getKind(entity);
+        boolean member = kind == MagneticStrengthCache.StrengthKind.PLAYER
+                || (kind != MagneticStrengthCache.StrengthKind.NONE && MagneticStrengthCache.getStrength(entity) > 0);
+        if (member) members.add(entity);
+        else members.remove(entity);
+        bucketTime = Long.MIN_VALUE;
+        return member;
+    }
+
+    // Members whose position lies inside the box
+    public void forEachIn(Box box, Consumer<Entity> consumer) {
+        if (!items.isEmpty()) recheckItems(box);
+        rebucket();
+        if (members.isEmpty()) return;
+        int minX = ChunkSectionPos.getSectionCoord(MathHelper.floor(box.minX)), maxX = ChunkSectionPos.getSectionCoord(MathHelper.floor(box.maxX));
+        int minY = ChunkSectionPos.getSectionCoord(MathHelper.floor(box.minY)), maxY = ChunkSectionPos.getSectionCoord(MathHelper.floor(box.maxY));
+        int minZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(box.minZ)), maxZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(box.maxZ));
+        long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume > sections.size()) {
+            for (List<Entity> entities : sections.values()) forEachInside(entities, box, consumer);
+            return;
+        }
+        for (int sx = minX; sx <= maxX; sx++) {
+            for (int sy = minY; sy <= maxY; sy++) {
+                for (int sz = minZ; sz <= maxZ; sz++) {
+                    List<Entity> entities = sections.get(ChunkSectionPos.asLong(sx, sy, sz));
+                    if (entities != null) forEachInside(entities, box, consumer);
+                }
+            }
+        }
+    }
+
+    private static void forEachInside(List<Entity> entities, Box box, Consumer<Entity> consumer) {
+        for (Entity entity : entities) if (box.contains(entity.getX(), entity.getY(), entity.getZ())) consumer.accept(entity);
+    }
+
+    private void rebucket() {
+        if (bucketTime == world.getTime()) return;
+        bucketTime = world.getTime();
+        for (List<Entity> entities : sections.values()) entities.clear();
+        for (ObjectIterator<Entity> it = members.iterator(); it.hasNext(); ) {
+            Entity entity = it.next();
+            if (entity.isRemoved()) {
+                it.remove();
+                continue;
+            }
+            if (entity.isSpectator()) continue;
+            long key = ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(entity.getBlockX()),
+                    ChunkSectionPos.getSectionCoord(entity.getBlockY()), ChunkSectionPos.getSectionCoord(entity.getBlockZ()));
+            sections.computeIfAbsent(key, k -> new ArrayList<>()).add(entity);
+        }
+        sections.values().removeIf(List::isEmpty);
+    }
+
+    // Only items a field can reach are compared, the world's entity sections find them without walking every item
+    private void recheckItems(Box box) {
+        for (ItemEntity entity : world.getEntitiesByClass(ItemEntity.class, box, this::itemChanged)) {
+            items.put(entity, entity.getStack().getItem());
+            refresh(entity);
+        }
+    }
+
+    private boolean itemChanged(ItemEntity entity) {
+        Item known = items.get(entity);
+        return known != null && known != entity.getStack().getItem();
+    }
+
+    public int size() {
+        return members.size();
+    }
+}
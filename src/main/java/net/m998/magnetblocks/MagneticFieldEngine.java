@@ -0,0 +1,385 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import java.util.*;
+
+// Sums the fields of all emitters on every entity once per world tick
+public class MagneticFieldEngine {
+    private static final Map<ServerWorld, MagneticFieldEngine> ENGINES = new WeakHashMap<>();
+    private static final int STRIDE = 4;
+    private static final byte FLAG_PHANTOM = MagneticFieldSnapshot.FLAG_PHANTOM;
+    private static final byte FLAG_ATTRACTING = MagneticFieldSnapshot.FLAG_ATTRACTING;
+    private static final int DORMANT_RECHECK_INTERVAL = 40;
+    private static final int GROUP_CELL = 64;
+    private static final int MAX_GROUP_CELLS = 64;
+
+    private final ServerWorld world;
+    private final MagnetUpdateScheduler scheduler = new MagnetUpdateScheduler();
+    private final MagnetClusters clusters;
+    private final MagnetVelocitySync velocitySync = new MagnetVelocitySync();
+    private final MagnetCaptures captures = new MagnetCaptures(this);
+    private final List<FieldEmitter> emitters = new ArrayList<>();
+    // Emitters with nothing magnetic in range
+    private final LongOpenHashSet dormantBlocks = new LongOpenHashSet();
+    private final IntOpenHashSet dormantPhantoms = new IntOpenHashSet();
+    private final Int2LongOpenHashMap playerSections = new Int2LongOpenHashMap();
+    // Reach of the fields changed this tick
+    private final List<Box> changedFields = new ArrayList<>();
+    private long strengthGeneration = -1;
+    private final Reference2IntOpenHashMap<Entity> entityIndex = new Reference2IntOpenHashMap<>();
+    private final List<Entity> affected = new ArrayList<>();
+    private final MagneticFieldSnapshot snapshot = new MagneticFieldSnapshot();
+    private final List<EmitterGroup> processed = new ArrayList<>();
+    private final ReferenceOpenHashSet<Entity> groupEntities = new ReferenceOpenHashSet<>();
+    // Trail particles between two sends
+    private final DoubleArrayList trails = new DoubleArrayList();
+    // Per affected entity: impulse x, y, z, strongest contribution
+    private double[] impulses = new double[STRIDE * 64];
+    private byte[] flags = new byte[64];
+
+    private MagneticFieldEngine(ServerWorld world) {
+        this.world = world;
+        this.clusters = new MagnetClusters(world);
+        entityIndex.defaultReturnValue(-1);
+        playerSections.defaultReturnValue(Long.MIN_VALUE);
+    }
+
+    public static MagneticFieldEngine get(ServerWorld world) {
+        return ENGINES.computeIfAbsent(world, MagneticFieldEngine::new);
+    }
+
+    public static void tick(ServerWorld world) {
+        get(world).run();
+    }
+
+    public MagnetUpdateScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public MagnetVelocitySync getVelocitySync() {
+        return velocitySync;
+    }
+
+    public MagnetCaptures getCaptures() {
+        return captures;
+    }
+
+    // Cluster key or phantom id
+    public void addEmitter(long key, double x, double y, double z, double halfX, double halfY, double halfZ, double range, double force, boolean attracting, boolean phantom) {
+        if (range <= 0 || force == 0) return;
+        if (phantom ? dormantPhantoms.contains((int) key) : dormantBlocks.contains(key)) return;
+        int scale = scheduler.dueScale(key, phantom, x, y, z, range + Math.max(halfX, Math.max(halfY, halfZ)));
+        if (scale == 0) return;
+        emitters.add(new FieldEmitter(key, x, y, z, halfX, halfY, halfZ, range, force * scale, attracting, phantom));
+    }
+
+    public void wakeAround(double x, double y, double z) {
+        if (dormantBlocks.isEmpty() && dormantPhantoms.isEmpty()) return;
+        MagnetEmitterRegistry registry = MagnetEmitterRegistry.get(world);
+        if (!dormantBlocks.isEmpty()) registry.forEachBlockMagnetNear(x, y, z, MagnetBlockEntity.MAX_RANGE, packed -> dormantBlocks.remove(clusters.clusterKey(packed)));
+        if (!dormantPhantoms.isEmpty()) registry.forEachPhantomAffecting(x, y, z, dormantPhantoms::remove);
+    }
+
+    // Its cluster is rebuilt next tick
+    public void onMagnetChanged(BlockPos pos) {
+        clusters.markDirty(pos.asLong());
+    }
+
+    private void wakeAll() {
+        dormantBlocks.clear();
+        dormantPhantoms.clear();
+    }
+
+    // Whitelist edits and the periodic recheck wake everything, changed magnets wake only their own keys
+    private void updateDormancy() {
+        long generation = MagneticStrengthCache.getGeneration();
+        if (generation != strengthGeneration) captures.releaseAll();
+        if (generation != strengthGeneration || world.getTime() % DORMANT_RECHECK_INTERVAL == 0) {
+            strengthGeneration = generation;
+            playerSections.clear();
+            wakeAll();
+        }
+        for (ServerPlayerEntity player : world.getPlayers()) {
+            long section = ChunkSectionPos.asLong(ChunkSectionPos.getSectionCoord(player.getBlockX()),
+                    ChunkSectionPos.getSectionCoord(player.getBlockY()), ChunkSectionPos.getSectionCoord(player.getBlockZ()));
+            if (playerSections.put(player.getId(), section) != section) wakeAround(player.getX(), player.getY(), player.getZ());
+        }
+    }
+
+    private void sleep(FieldEmitter emitter) {
+        if (emitter.phantom) dormantPhantoms.add((int) emitter.key);
+        else dormantBlocks.add(emitter.key);
+        scheduler.forget(emitter.key, emitter.phantom);
+    }
+
+    public int getDormantCount() {
+        return dormantBlocks.size() + dormantPhantoms.size();
+    }
+
+    // Snapshot on the server thread, force pass over the copy, velocities applied back
+    private void run() {
+        scheduler.beginTick(world);
+        updateDormancy();
+        collectEmitters();
+        if (emitters.isEmpty()) {
+            trails.clear();
+            velocitySync.endTick(world.getTime());
+            captures.endTick(world.getTime());
+            return;
+        }
+        try {
+            List<EmitterGroup> groups = orderGroups(groupOverlapping());
+            snapshot.reset();
+            processed.clear();
+            // Batched so the budget sees the force pass
+            for (int n = 0; n < groups.size(); n++) {
+                if (n > 0 && scheduler.isOverBudget()) {
+                    deferGroups(groups.subList(n, groups.size()));
+                    break;
+                }
+                snapshotGroup(groups.get(n));
+                processed.add(groups.get(n));
+                if (snapshot.getPendingWork() >= MagneticFieldSnapshot.PARALLEL_THRESHOLD) snapshot.compute();
+            }
+            snapshot.compute();
+            int emitterIndex = 0;
+            for (EmitterGroup group : processed) {
+                for (FieldEmitter emitter : group.members) {
+                    if (snapshot.hasContributed(emitterIndex++)) scheduler.markUpdated(emitter.key, emitter.phantom);
+                    else sleep(emitter);
+                }
+            }
+            mergeEntries();
+            for (int i = 0; i < affected.size(); i++) integrate(affected.get(i), i);
+            if (world.getTime() % MagnetNetworking.TRAIL_INTERVAL == 0) {
+                MagnetNetworking.sendTrails(world, trails);
+                trails.clear();
+            }
+        } finally {
+            velocitySync.endTick(world.getTime());
+            captures.endTick(world.getTime());
+            entityIndex.clear();
+            affected.clear();
+            emitters.clear();
+            processed.clear();
+        }
+    }
+
+    private void collectEmitters() {
+        MagnetEmitterRegistry registry = MagnetEmitterRegistry.get(world);
+        clusters.update(registry, cluster -> {
+            dormantBlocks.remove(cluster.key());
+            changedFields.add(cluster.reach());
+        });
+        registry.consumeChangedPhantoms((id, x, y, z, radius) -> {
+            dormantPhantoms.remove(id);
+            changedFields.add(new Box(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius));
+        });
+        captures.releaseWithin(changedFields);
+        changedFields.clear();
+        if (registry.isEmpty()) return;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (MagnetClusters.Cluster cluster : clusters.getClusters()) {
+            if (!world.shouldTickBlockPos(pos.set(cluster.key()))) continue;
+            addEmitter(cluster.key(), cluster.x(), cluster.y(), cluster.z(), cluster.halfX(), cluster.halfY(), cluster.halfZ(),
+                    cluster.range(), cluster.force(), cluster.attracting(), false);
+        }
+        PhantomMagnetStore phantomMagnets = PhantomMagnetManager.get(world.getServer()).getMagnets();
+        registry.forEachPhantom(id -> {
+            int slot = phantomMagnets.slot(id);
+            if (slot >= 0 && registry.hasLoadedChunks(id)) MagnetBlockEntity.emitPhantomField(this, phantomMagnets, slot);
+        });
+    }
+
+    // Groups with an emitter deferred last tick go first
+    private List<EmitterGroup> orderGroups(List<EmitterGroup> groups) {
+        List<EmitterGroup> ordered = new ArrayList<>(groups.size());
+        for (EmitterGroup group : groups) if (wasDeferred(group)) ordered.add(group);
+        for (EmitterGroup group : groups) if (!wasDeferred(group)) ordered.add(group);
+        scheduler.clearDeferred();
+        return ordered;
+    }
+
+    private boolean wasDeferred(EmitterGroup group) {
+        for (FieldEmitter emitter : group.members) if (scheduler.wasDeferred(emitter.key, emitter.phantom)) return true;
+        return false;
+    }
+
+    private void deferGroups(List<EmitterGroup> groups) {
+        for (EmitterGroup group : groups) {
+            for (FieldEmitter emitter : group.members) scheduler.defer(emitter.key, emitter.phantom);
+            scheduler.countDeferredGroup();
+        }
+    }
+
+    // Union-find over emitters sharing a cell, boxes over MAX_GROUP_CELLS cells are compared with all
+    private List<EmitterGroup> groupOverlapping() {
+        int count = emitters.size();
+        int[] parent = new int[count];
+        Box[] bounds = new Box[count];
+        Long2ObjectOpenHashMap<IntArrayList> cells = new Long2ObjectOpenHashMap<>();
+        IntArrayList large = new IntArrayList();
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+            Box box = bounds[i] = emitters.get(i).bounds();
+            for (int n = 0; n < large.size(); n++) if (box.intersects(bounds[large.getInt(n)])) union(parent, i, large.getInt(n));
+            int minX = Math.floorDiv(MathHelper.floor(box.minX), GROUP_CELL), maxX = Math.floorDiv(MathHelper.floor(box.maxX), GROUP_CELL);
+            int minY = Math.floorDiv(MathHelper.floor(box.minY), GROUP_CELL), maxY = Math.floorDiv(MathHelper.floor(box.maxY), GROUP_CELL);
+            int minZ = Math.floorDiv(MathHelper.floor(box.minZ), GROUP_CELL), maxZ = Math.floorDiv(MathHelper.floor(box.maxZ), GROUP_CELL);
+            if ((long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1) > MAX_GROUP_CELLS) {
+                for (int j = 0; j < i; j++) if (box.intersects(bounds[j])) union(parent, i, j);
+                large.add(i);
+                continue;
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        IntArrayList occupants = cells.computeIfAbsent(BlockPos.asLong(x, y, z), key -> new IntArrayList());
+                        for (int n = 0; n < occupants.size(); n++) {
+                            int j = occupants.getInt(n);
+                            if (find(parent, i) != find(parent, j) && box.intersects(bounds[j])) union(parent, i, j);
+                        }
+                        occupants.add(i);
+                    }
+                }
+            }
+        }
+        Int2ObjectOpenHashMap<EmitterGroup> byRoot = new Int2ObjectOpenHashMap<>();
+        List<EmitterGroup> groups = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            EmitterGroup group = byRoot.get(find(parent, i));
+            if (group == null) {
+                group = new EmitterGroup();
+                byRoot.put(find(parent, i), group);
+                groups.add(group);
+            }
+            group.members.add(emitters.get(i));
+        }
+        return groups;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) i = parent[i] = parent[parent[i]];
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    // Each emitter queries its own box, entities are added once per group
+    private void snapshotGroup(EmitterGroup group) {
+        MagneticEntityRegistry entities = MagneticEntityRegistry.get(world);
+        for (FieldEmitter emitter : group.members) {
+            snapshot.addEmitter(emitter.x, emitter.y, emitter.z, emitter.halfX, emitter.halfY, emitter.halfZ,
+                    emitter.range, emitter.force, emitter.attracting, emitter.phantom);
+        }
+        for (FieldEmitter emitter : group.members) {
+            entities.forEachIn(emitter.bounds(), entity -> {
+                if (groupEntities.add(entity)) snapshotEntity(entity);
+            });
+        }
+        groupEntities.clear();
+        snapshot.endGroup();
+    }
+
+    private void snapshotEntity(Entity entity) {
+        if (captures.isCaptured(entity)) return;
+        double strength = MagneticStrengthCache.getStrength(entity);
+        if (strength <= 0) return;
+        int slot = entityIndex.getInt(entity);
+        if (slot < 0) slot = allocate(entity);
+        double[] predicted = MagnetPrediction.getVelocity(entity);
+        Vec3d velocity = entity.getVelocity();
+        double vx = predicted != null ? predicted[0] : velocity.x, vy = predicted != null ? predicted[1] : velocity.y, vz = predicted != null ? predicted[2] : velocity.z;
+        snapshot.addEntry(slot, entity.getX(), entity.getY(), entity.getZ(), vx, vy, vz,
+                MagneticForceKernel.strengthMultiplier(strength), entity instanceof PlayerEntity);
+    }
+
+    // One entry per group, summed here
+    private void mergeEntries() {
+        for (int entry = 0; entry < snapshot.getEntryCount(); entry++) {
+            int slot = snapshot.getSlot(entry), out = slot * STRIDE;
+            byte entryFlags = snapshot.getFlags(entry);
+            impulses[out] += snapshot.impulseX[entry];
+            impulses[out + 1] += snapshot.impulseY[entry];
+            impulses[out + 2] += snapshot.impulseZ[entry];
+            flags[slot] |= entryFlags & FLAG_PHANTOM;
+            if (snapshot.strongest[entry] > impulses[out + 3]) {
+                impulses[out + 3] = snapshot.strongest[entry];
+                flags[slot] = (byte) ((flags[slot] & ~FLAG_ATTRACTING) | (entryFlags & FLAG_ATTRACTING));
+            }
+        }
+    }
+
+    private int allocate(Entity entity) {
+        int slot = affected.size();
+        affected.add(entity);
+        entityIndex.put(entity, slot);
+        if (slot >= flags.length) {
+            flags = Arrays.copyOf(flags, flags.length * 2);
+            impulses = Arrays.copyOf(impulses, flags.length * STRIDE);
+        }
+        Arrays.fill(impulses, slot * STRIDE, slot * STRIDE + STRIDE, 0.0);
+        flags[slot] = 0;
+        return slot;
+    }
+
+    private void integrate(Entity entity, int slot) {
+        int offset = slot * STRIDE;
+        double ix = impulses[offset], iy = impulses[offset + 1], iz = impulses[offset + 2];
+        if (ix == 0.0 && iy == 0.0 && iz == 0.0) return;
+        double[] predicted = MagnetPrediction.getReportedVelocity(entity);
+        if (predicted != null) {
+            // Applied by the client, kept to check the prediction
+            double vx = predicted[0] + ix, vy = predicted[1] + iy, vz = predicted[2] + iz;
+            double scale = MagneticForceKernel.clampScale(vx, vy, vz);
+            MagnetPrediction.record(entity, vx * scale - predicted[0], vy * scale - predicted[1], vz * scale - predicted[2]);
+        } else {
+            Vec3d current = entity.getVelocity();
+            double vx = current.x + ix, vy = current.y + iy, vz = current.z + iz;
+            double scale = MagneticForceKernel.clampScale(vx, vy, vz);
+            entity.setVelocity(vx * scale, vy * scale, vz * scale);
+            velocitySync.record(entity, vx * scale - current.x, vy * scale - current.y, vz * scale - current.z, world.getTime());
+            if (!(entity instanceof PlayerEntity)) captures.observe(entity, world.getTime());
+        }
+        boolean phantom = (flags[slot] & FLAG_PHANTOM) != 0;
+        if (world.random.nextInt(phantom ? 3 : 10) == 0) {
+            trails.add(entity.getX());
+            trails.add(entity.getY() + entity.getHeight() / 2);
+            trails.add(entity.getZ());
+            trails.add(ix);
+            trails.add(iy);
+            trails.add(iz);
+            trails.add(flags[slot]);
+        }
+    }
+
+    private record FieldEmitter(long key, double x, double y, double z, double halfX, double halfY, double halfZ,
+                                double range, double force, boolean attracting, boolean phantom) {
+        Box bounds() {
+            return new Box(x - halfX - range, y - halfY - range, z - halfZ - range, x + halfX + range, y + halfY + range, z + halfZ + range);
+        }
+    }
+
+    private static class EmitterGroup {
+        private final List<FieldEmitter> members = new ArrayList<>();
+    }
+}
@@ -0,0 +1,239 @@
+package net.m998.magnetblocks;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+// Flat copy of emitters and candidate entities taken on the server thread. The force pass only reads this copy,
+// so it can run on worker threads. Entries are (entity, group) pairs laid out group by group, which keeps every task inside one region
+final class MagneticFieldSnapshot {
+    // Конфиги
+    public static boolean PARALLEL = true;
+    public static long PARALLEL_THRESHOLD = 16384;
+    public static boolean VECTORIZED = false;
+    private static final int MIN_ENTRIES_PER_TASK = 64;
+
+    static final byte FLAG_PHANTOM = 1;
+    static final byte FLAG_ATTRACTING = 2;
+    // Kernel from the vector source set, null unless the JVM was started with --add-modules jdk.incubator.vector
+    static final ForceKernel VECTOR_KERNEL = loadVectorKernel();
+    // Impulse of the entry being summed, one per pool worker and the server thread
+    private static final ThreadLocal<double[]> IMPULSE = ThreadLocal.withInitial(() -> new double[3]);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Magnet Worker-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        thread.setContextClassLoader(MagneticFieldSnapshot.class.getClassLoader());
+        return thread;
+    }, null, false);
+
+    // Emitters, one array per field: centre, half extents of the box, range, force
+    int emitterCount;
+    double[] emitterX = new double[64], emitterY = new double[64], emitterZ = new double[64];
+    double[] halfX = new double[64], halfY = new double[64], halfZ = new double[64];
+    double[] range = new double[64], force = new double[64];
+    boolean[] attracting = new boolean[64], phantom = new boolean[64], contributed = new boolean[64];
+
+    // Entries: position, velocity, strength multiplier
+    int entryCount;
+    double[] entryX = new double[64], entryY = new double[64], entryZ = new double[64];
+    double[] velocityX = new double[64], velocityY = new double[64], velocityZ = new double[64];
+    double[] strength = new double[64];
+    boolean[] player = new boolean[64];
+    private int[] entrySlot = new int[64];
+    // Output per entry: impulse, squared length of the strongest contribution, its polarity and whether a phantom magnet contributed
+    double[] impulseX = new double[64], impulseY = new double[64], impulseZ = new double[64], strongest = new double[64];
+    boolean[] strongestAttracting = new boolean[64], phantomHit = new boolean[64];
+
+    private int groupCount;
+    private int[] groupEmitterStart = new int[65], groupEntryStart = new int[65];
+    private long work;
+    // Entries and work already computed, compute() only picks up the groups closed since its previous call
+    private int computedEntries;
+    private long computedWork;
+
+    void reset() {
+        emitterCount = 0;
+        entryCount = 0;
+        groupCount = 0;
+        work = 0;
+        computedEntries = 0;
+        computedWork = 0;
+    }
+
+    void addEmitter(double x, double y, double z, double halfX, double halfY, double halfZ, double range, double force, boolean attracting, boolean phantom) {
+        if (emitterCount >= emitterX.length) growEmitters(emitterX.length * 2);
+        int index = emitterCount++;
+        emitterX[index] = x;
+        emitterY[index] = y;
+        emitterZ[index] = z;
+        this.halfX[index] = halfX;
+        this.halfY[index] = halfY;
+        this.halfZ[index] = halfZ;
+        this.range[index] = range;
+        this.force[index] = force;
+        this.attracting[index] = attracting;
+        this.phantom[index] = phantom;
+        contributed[index] = false;
+    }
+
+    void addEntry(int slot, double x, double y, double z, double vx, double vy, double vz, double strengthMultiplier, boolean player) {
+        if (entryCount >= entryX.length) growEntries(entryX.length * 2);
+        int index = entryCount++;
+        entryX[index] = x;
+        entryY[index] = y;
+        entryZ[index] = z;
+        velocityX[index] = vx;
+        velocityY[index] = vy;
+        velocityZ[index] = vz;
+        strength[index] = strengthMultiplier;
+        this.player[index] = player;
+        entrySlot[index] = slot;
+    }
+
+    // Closes the group made of the emitters and entries added since the previous call
+    void endGroup() {
+        work += (long) (entryCount - groupEntryStart[groupCount]) * (emitterCount - groupEmitterStart[groupCount]);
+        groupCount++;
+        if (groupCount + 1 > groupEmitterStart.length) {
+            groupEmitterStart = Arrays.copyOf(groupEmitterStart, groupEmitterStart.length * 2);
+            groupEntryStart = Arrays.copyOf(groupEntryStart, groupEntryStart.length * 2);
+        }
+        groupEmitterStart[groupCount] = emitterCount;
+        groupEntryStart[groupCount] = entryCount;
+    }
+
+    void compute() {
+        if (computedEntries < entryCount) {
+            if (PARALLEL && getPendingWork() >= PARALLEL_THRESHOLD) POOL.invoke(new ForceTask(computedEntries, entryCount));
+            else computeEntries(computedEntries, entryCount);
+        }
+        computedEntries = entryCount;
+        computedWork = work;
+    }
+
+    long getPendingWork() {
+        return work - computedWork;
+    }
+
+    // Walks the groups overlapping [from, to) and evaluates every entry against the emitters of its group
+    private void computeEntries(int from, int to) {
+        int group = Arrays.binarySearch(groupEntryStart, 0, groupCount + 1, from);
+        if (group < 0) group = -group - 2;
+        while (group < groupCount && groupEntryStart[group + 1] <= from) group++;
+        for (; group < groupCount && groupEntryStart[group] < to; group++) {
+            int start = Math.max(from, groupEntryStart[group]), end = Math.min(to, groupEntryStart[group + 1]);
+            if (start >= end) continue;
+            if (VECTORIZED && VECTOR_KERNEL != null) VECTOR_KERNEL.compute(this, groupEmitterStart[group], groupEmitterStart[group + 1], start, end);
+            else computeScalar(groupEmitterStart[group], groupEmitterStart[group + 1], start, end);
+        }
+    }
+
+    void computeScalar(int emitterFrom, int emitterTo, int entryFrom, int entryTo) {
+        double[] impulse = IMPULSE.get();
+        for (int entry = entryFrom; entry < entryTo; entry++) {
+            impulse[0] = impulse[1] = impulse[2] = 0.0;
+            double best = 0.0;
+            boolean bestAttracting = false, phantomContributed = false;
+            for (int emitter = emitterFrom; emitter < emitterTo; emitter++) {
+                double magnitude = MagneticForceKernel.accumulate(impulse, 0, emitterX[emitter], emitterY[emitter], emitterZ[emitter],
+                        halfX[emitter], halfY[emitter], halfZ[emitter], range[emitter], force[emitter], attracting[emitter],
+                        entryX[entry], entryY[entry], entryZ[entry], strength[entry], player[entry], velocityX[entry], velocityY[entry], velocityZ[entry]);
+                if (magnitude == 0.0) continue;
+                // Every writer stores true, and the pool join publishes it to the server thread
+                contributed[emitter] = true;
+                if (phantom[emitter]) phantomContributed = true;
+                if (magnitude > best) {
+                    best = magnitude;
+                    bestAttracting = attracting[emitter];
+                }
+            }
+            impulseX[entry] = impulse[0];
+            impulseY[entry] = impulse[1];
+            impulseZ[entry] = impulse[2];
+            strongest[entry] = best;
+            strongestAttracting[entry] = bestAttracting;
+            phantomHit[entry] = phantomContributed;
+        }
+    }
+
+    private void growEmitters(int size) {
+        emitterX = Arrays.copyOf(emitterX, size);
+        emitterY = Arrays.copyOf(emitterY, size);
+        emitterZ = Arrays.copyOf(emitterZ, size);
+        halfX = Arrays.copyOf(halfX, size);
+        halfY = Arrays.copyOf(halfY, size);
+        halfZ = Arrays.copyOf(halfZ, size);
+        range = Arrays.copyOf(range, size);
+        force = Arrays.copyOf(force, size);
+        attracting = Arrays.copyOf(attracting, size);
+        phantom = Arrays.copyOf(phantom, size);
+        contributed = Arrays.copyOf(contributed, size);
+    }
+
+    private void growEntries(int size) {
+        entryX = Arrays.copyOf(entryX, size);
+        entryY = Arrays.copyOf(entryY, size);
+        entryZ = Arrays.copyOf(entryZ, size);
+        velocityX = Arrays.copyOf(velocityX, size);
+        velocityY = Arrays.copyOf(velocityY, size);
+        velocityZ = Arrays.copyOf(velocityZ, size);
+        strength = Arrays.copyOf(strength, size);
+        player = Arrays.copyOf(player, size);
+        entrySlot = Arrays.copyOf(entrySlot, size);
+        impulseX = Arrays.copyOf(impulseX, size);
+        impulseY = Arrays.copyOf(impulseY, size);
+        impulseZ = Arrays.copyOf(impulseZ, size);
+        strongest = Arrays.copyOf(strongest, size);
+        strongestAttracting = Arrays.copyOf(strongestAttracting, size);
+        phantomHit = Arrays.copyOf(phantomHit, size);
+    }
+
+    int getEntryCount() { return entryCount; }
+    int getSlot(int entry) { return entrySlot[entry]; }
+    boolean hasContributed(int emitter) { return contributed[emitter]; }
+
+    byte getFlags(int entry) {
+        byte flags = 0;
+        if (phantomHit[entry]) flags |= FLAG_PHANTOM;
+        if (strongestAttracting[entry]) flags |= FLAG_ATTRACTING;
+        return flags;
+    }
+
+    private static ForceKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return (ForceKernel) Class.forName("net.m998.magnetblocks.MagneticVectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            MagnetBlocksMod.LOGGER.warn("Could not load the vector force kernel, the scalar one is used", e);
+            return null;
+        }
+    }
+
+    // Computes the entries [entryFrom, entryTo) against the emitters [emitterFrom, emitterTo) of one group
+    interface ForceKernel {
+        void compute(MagneticFieldSnapshot snapshot, int emitterFrom, int emitterTo, int entryFrom, int entryTo);
+    }
+
+    private class ForceTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        ForceTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_ENTRIES_PER_TASK) {
+                computeEntries(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForceTask(from, middle), new ForceTask(middle, to));
+        }
+    }
+}
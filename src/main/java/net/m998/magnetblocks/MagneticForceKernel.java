@@ -0,0 +1,71 @@
+package net.m998.magnetblocks;
+
+// Force math on primitive doubles, nothing here allocates
+public final class MagneticForceKernel {
+    public static final double MAX_SPEED = 2.0;
+    private static final double FALLOFF_EXPONENT = 0.7;
+    private static final int FALLOFF_RESOLUTION = 1024;
+    private static final double[] FALLOFF = new double[FALLOFF_RESOLUTION + 2];
+    static {
+        for (int i = 0; i <= FALLOFF_RESOLUTION; i++) FALLOFF[i] = Math.pow(1.0 - (double) i / FALLOFF_RESOLUTION, FALLOFF_EXPONENT);
+        FALLOFF[FALLOFF_RESOLUTION + 1] = 0.0;
+    }
+
+    private MagneticForceKernel() {}
+
+    // (1 - ratio)^0.7 for ratio in [0, 1], linearly interpolated from the table
+    public static double falloff(double ratio) {
+        double scaled = ratio * FALLOFF_RESOLUTION;
+        int index = (int) scaled;
+        if (index >= FALLOFF_RESOLUTION) return 0.0;
+        double low = FALLOFF[index];
+        return low + (FALLOFF[index + 1] - low) * (scaled - index);
+    }
+
+    public static double strengthMultiplier(double strength) {
+        return Math.max(0.01, Math.min(strength, 5.0));
+    }
+
+    // Adds the impulse of one emitter on a point to out[offset..offset + 2] and returns its squared length, 0 when out of range.
+    // The emitter is a box with the given half extents (0 for a single magnet): distance is measured to the box, direction to its centre.
+    // The velocity is only read for players, whose movement along the field scales the pull
+    public static double accumulate(double[] out, int offset, double ex, double ey, double ez, double hx, double hy, double hz, double range, double force,
+                                    boolean attracting, double px, double py, double pz, double strengthMultiplier, boolean player, double vx, double vy, double vz) {
+        double dx = ex - px, dy = ey - py, dz = ez - pz;
+        double ox = Math.max(Math.abs(dx) - hx, 0.0), oy = Math.max(Math.abs(dy) - hy, 0.0), oz = Math.max(Math.abs(dz) - hz, 0.0);
+        double outsideSquared = ox * ox + oy * oy + oz * oz;
+        double distanceSquared = dx * dx + dy * dy + dz * dz;
+        if (outsideSquared > range * range || distanceSquared == 0.0) return 0.0;
+        double distance = Math.sqrt(distanceSquared);
+        double outside = outsideSquared == distanceSquared ? distance : Math.sqrt(outsideSquared);
+        double inverseDistance = attracting ? 1.0 / distance : -1.0 / distance;
+        double dirX = dx * inverseDistance, dirY = dy * inverseDistance, dirZ = dz * inverseDistance;
+        double magnitude = force * falloff(outside / range) * strengthMultiplier;
+        if (player) magnitude *= playerMovementFactor(dirX, dirY, dirZ, vx, vy, vz, attracting);
+        out[offset] += dirX * magnitude;
+        out[offset + 1] += dirY * magnitude;
+        out[offset + 2] += dirZ * magnitude;
+        return magnitude * magnitude;
+    }
+
+    // Pull is stronger when the player already moves with the field and weaker against it
+    private static double playerMovementFactor(double dirX, double dirY, double dirZ, double vx, double vy, double vz, boolean attracting) {
+        double speedSquared = vx * vx + vy * vy + vz * vz;
+        if (speedSquared < 0.0001) return 1.0;
+        double dotProduct = (vx * dirX + vy * dirY + vz * dirZ) / Math.sqrt(speedSquared);
+        if (attracting) {
+            if (dotProduct > 0.3) return 1.5;
+            else if (dotProduct < -0.3) return 0.7;
+        } else {
+            if (dotProduct > 0.3) return 0.5;
+            else if (dotProduct < -0.3) return 1.5;
+        }
+        return 1.0;
+    }
+
+    // Scale applied to the summed velocity so its length stays within MAX_SPEED
+    public static double clampScale(double vx, double vy, double vz) {
+        double speedSquared = vx * vx + vy * vy + vz * vz;
+        return speedSquared > MAX_SPEED * MAX_SPEED ? MAX_SPEED / Math.sqrt(speedSquared) : 1.0;
+    }
+}
@@ -1,5 +1,8 @@
 package net.m998.magnetblocks;
 
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.world.PersistentState;
@@ -7,6 +10,7 @@ import java.util.*;
 
 public class MagneticStormManager extends PersistentState {
     private static final String DATA_NAME = "magnetblocks_storms";
+    private static final int BACKUP_FORMAT = 2;
 
     // Конфиги
     public static boolean ENABLE_MAGNETIC_STORMS = true;
@@ -28,6 +32,8 @@ public class MagneticStormManager extends PersistentState {
     private double stormIntensity = 1.0;
     private boolean isCustomStorm = false;
     private final Map<Integer, MagnetBackup> magnetBackups = new HashMap<>();
+    // Backups of magnets whose region was not resident when a storm ended, restored when the region loads
+    private final IntOpenHashSet pendingRestores = new IntOpenHashSet();
     private final Random random = new Random();
 
     public MagneticStormManager() {
@@ -77,41 +83,91 @@ public class MagneticStormManager extends PersistentState {
 
     public void endStorm(MinecraftServer server) {
         if (!stormActive) return;
-        restoreMagnetBackups(server);
         stormActive = false;
+        restoreMagnetBackups(server);
         stormIntensity = 1.0;
-        magnetBackups.clear();
         if (!isCustomStorm) scheduleNextStorm();
         isCustomStorm = false;
         this.markDirty();
     }
 
+    // Resident magnets are backed up when the storm starts, the others when their region loads during the storm (onMagnetsLoaded).
+    // Backups still pending from an earlier storm are kept
     private void saveMagnetBackups(MinecraftServer server) {
         PhantomMagnetManager magnetManager = PhantomMagnetManager.get(server);
-        var magnets = magnetManager.getMagnets();
-        magnetBackups.clear();
-        for (var entry : magnets.entrySet()) {
-            int magnetId = entry.getKey();
-            PhantomMagnetManager.PhantomMagnet magnet = entry.getValue();
-            MagnetBackup backup = new MagnetBackup(magnet.getRadius(), magnet.getForceMultiplier(), magnet.isAttracting());
-            magnetBackups.put(magnetId, backup);
+        PhantomMagnetStore magnets = magnetManager.getMagnets();
+        for (int slot = 0; slot < magnets.size(); slot++) magnetBackups.put(magnets.getId(slot), backup(magnets, slot));
+    }
+
+    private static MagnetBackup backup(PhantomMagnetStore magnets, int slot) {
+        return new MagnetBackup(magnets.getRadius(slot), magnets.getForceMultiplier(slot), magnets.isAttracting(slot));
+    }
+
+    // A pending backup is restored first. Outside a storm that is all, during one the backup stays and the storm is applied from it.
+    // Any other magnet with a backup already carries the storm values, its region was saved during the storm. Returns true when a magnet changed
+    public boolean onMagnetsLoaded(PhantomMagnetManager magnetManager, IntCollection ids) {
+        if (magnetBackups.isEmpty() && (!stormActive || currentEffect == null)) return false;
+        PhantomMagnetStore magnets = magnetManager.getMagnets();
+        boolean changed = false;
+        for (IntIterator it = ids.iterator(); it.hasNext(); ) {
+            int id = it.nextInt();
+            int slot = magnets.slot(id);
+            if (slot < 0) continue;
+            boolean restored = pendingRestores.remove(id);
+            if (restored) {
+                restore(magnets, slot, magnetBackups.get(id));
+                if (!stormActive) magnetBackups.remove(id);
+                changed = true;
+            }
+            if (!stormActive || currentEffect == null) continue;
+            MagnetBackup backup = magnetBackups.get(id);
+            if (backup == null) {
+                backup = backup(magnets, slot);
+                magnetBackups.put(id, backup);
+            } else if (!restored) {
+                continue;
+            }
+            applyStormEffect(magnets, slot, backup);
+            changed = true;
         }
+        if (changed) this.markDirty();
+        return changed;
     }
 
+    // Resident magnets get their values back now, the rest when their region loads
     private void restoreMagnetBackups(MinecraftServer server) {
         PhantomMagnetManager magnetManager = PhantomMagnetManager.get(server);
-        var magnets = magnetManager.getMagnets();
-        for (var entry : magnets.entrySet()) {
-            int magnetId = entry.getKey();
-            PhantomMagnetManager.PhantomMagnet magnet = entry.getValue();
-            MagnetBackup backup = magnetBackups.get(magnetId);
-            if (backup != null) {
-                magnet.setRadius(backup.radius);
-                magnet.setForceMultiplier(backup.forceMultiplier);
-                magnet.setAttracting(backup.attracting);
+        PhantomMagnetStore magnets = magnetManager.getMagnets();
+        for (Iterator<Map.Entry<Integer, MagnetBackup>> it = magnetBackups.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, MagnetBackup> entry = it.next();
+            int slot = magnets.slot(entry.getKey());
+            if (slot < 0) {
+                pendingRestores.add(entry.getKey().intValue());
+                continue;
             }
+            restore(magnets, slot, entry.getValue());
+            it.remove();
         }
-        magnetManager.markDirty();
+        magnetManager.allMagnetsModified();
+    }
+
+    private static void restore(PhantomMagnetStore magnets, int slot, MagnetBackup backup) {
+        magnets.setRadius(slot, backup.radius);
+        magnets.setForce(slot, backup.forceMultiplier);
+        magnets.setAttracting(slot, backup.attracting);
+    }
+
+    // A removed magnet's id can be handed out again, its backup must not reach the new magnet
+    public void onMagnetRemoved(int id) {
+        if (magnetBackups.remove(id) == null) return;
+        pendingRestores.remove(id);
+        this.markDirty();
+    }
+
+    public void onMagnetsCleared() {
+        magnetBackups.clear();
+        pendingRestores.clear();
+        this.markDirty();
     }
 
     private void scheduleNextStorm() {
@@ -133,35 +189,37 @@ public class MagneticStormManager extends PersistentState {
 
     private void applyStormEffect(MinecraftServer server) {
         PhantomMagnetManager magnetManager = PhantomMagnetManager.get(server);
-        var magnets = magnetManager.getMagnets();
-        for (var entry : magnets.entrySet()) {
-            PhantomMagnetManager.PhantomMagnet magnet = entry.getValue();
-            MagnetBackup backup = magnetBackups.get(entry.getKey());
-            if (backup == null) continue;
-            switch (currentEffect) {
-                case POLARITY_INVERT -> magnet.setAttracting(!backup.attracting);
-                case RANDOM_POLARITY -> magnet.setAttracting(random.nextBoolean());
-                case POWER_OFF -> {
-                    double powerReduction = 0.01 / stormIntensity;
-                    magnet.setForceMultiplier(Math.max(0.001, powerReduction));
-                }
-                case POWER_BOOST -> {
-                    double boostMultiplier = (1.5 + random.nextDouble() * 1.5) * stormIntensity;
-                    double newBoostForce = backup.forceMultiplier * boostMultiplier;
-                    magnet.setForceMultiplier(Math.min(newBoostForce, 10.0));
-                }
-                case POWER_REDUCE -> {
-                    double reduceMultiplier = (0.1 + random.nextDouble() * 0.4) / stormIntensity;
-                    magnet.setForceMultiplier(backup.forceMultiplier * reduceMultiplier);
-                }
-                case RANDOM_RADIUS -> {
-                    double radiusMultiplier = 0.5 + (random.nextDouble() * stormIntensity);
-                    double newRadius = backup.radius * radiusMultiplier;
-                    magnet.setRadius(Math.min(Math.max(newRadius, 1.0), 500.0));
-                }
+        PhantomMagnetStore magnets = magnetManager.getMagnets();
+        for (int slot = 0; slot < magnets.size(); slot++) {
+            MagnetBackup backup = magnetBackups.get(magnets.getId(slot));
+            if (backup != null) applyStormEffect(magnets, slot, backup);
+        }
+        magnetManager.allMagnetsModified();
+    }
+
+    private void applyStormEffect(PhantomMagnetStore magnets, int slot, MagnetBackup backup) {
+        switch (currentEffect) {
+            case POLARITY_INVERT -> magnets.setAttracting(slot, !backup.attracting);
+            case RANDOM_POLARITY -> magnets.setAttracting(slot, random.nextBoolean());
+            case POWER_OFF -> {
+                double powerReduction = 0.01 / stormIntensity;
+                magnets.setForce(slot, Math.max(0.001, powerReduction));
+            }
+            case POWER_BOOST -> {
+                double boostMultiplier = (1.5 + random.nextDouble() * 1.5) * stormIntensity;
+                double newBoostForce = backup.forceMultiplier * boostMultiplier;
+                magnets.setForce(slot, Math.min(newBoostForce, 10.0));
+            }
+            case POWER_REDUCE -> {
+                double reduceMultiplier = (0.1 + random.nextDouble() * 0.4) / stormIntensity;
+                magnets.setForce(slot, backup.forceMultiplier * reduceMultiplier);
+            }
+            case RANDOM_RADIUS -> {
+                double radiusMultiplier = 0.5 + (random.nextDouble() * stormIntensity);
+                double newRadius = backup.radius * radiusMultiplier;
+                magnets.setRadius(slot, Math.min(Math.max(newRadius, 1.0), 500.0));
             }
         }
-        magnetManager.markDirty();
     }
 
     public boolean isStormActive() { return stormActive; }
@@ -189,14 +247,23 @@ public class MagneticStormManager extends PersistentState {
 
         if (currentEffect != null) nbt.putString("currentEffect", currentEffect.name());
 
-        net.minecraft.nbt.NbtList backupsList = new net.minecraft.nbt.NbtList();
+        // Backups are stored as one array per field, doubles as their raw bits
+        int count = magnetBackups.size(), i = 0;
+        int[] ids = new int[count];
+        long[] radius = new long[count], force = new long[count];
+        byte[] attracting = new byte[count];
         for (var entry : magnetBackups.entrySet()) {
-            net.minecraft.nbt.NbtCompound backupNbt = new net.minecraft.nbt.NbtCompound();
-            backupNbt.putInt("magnetId", entry.getKey());
-            backupNbt.put("backup", entry.getValue().toNbt());
-            backupsList.add(backupNbt);
+            ids[i] = entry.getKey();
+            radius[i] = Double.doubleToRawLongBits(entry.getValue().radius);
+            force[i] = Double.doubleToRawLongBits(entry.getValue().forceMultiplier);
+            attracting[i++] = (byte) (entry.getValue().attracting ? 1 : 0);
         }
-        nbt.put("magnetBackups", backupsList);
+        nbt.putInt("backupFormat", BACKUP_FORMAT);
+        nbt.putIntArray("backupIds", ids);
+        nbt.putLongArray("backupRadius", radius);
+        nbt.putLongArray("backupForce", force);
+        nbt.putByteArray("backupAttracting", attracting);
+        nbt.putIntArray("pendingRestores", pendingRestores.toIntArray());
 
         return nbt;
     }
@@ -257,7 +324,16 @@ public class MagneticStormManager extends PersistentState {
             }
         }
 
-        if (nbt.contains("magnetBackups")) {
+        if (nbt.getInt("backupFormat") >= 2) {
+            int[] ids = nbt.getIntArray("backupIds");
+            long[] radius = nbt.getLongArray("backupRadius"), force = nbt.getLongArray("backupForce");
+            byte[] attracting = nbt.getByteArray("backupAttracting");
+            int count = Math.min(Math.min(ids.length, attracting.length), Math.min(radius.length, force.length));
+            for (int i = 0; i < count; i++) {
+                manager.magnetBackups.put(ids[i], new MagnetBackup(Double.longBitsToDouble(radius[i]), Double.longBitsToDouble(force[i]), attracting[i] != 0));
+            }
+            for (int id : nbt.getIntArray("pendingRestores")) if (manager.magnetBackups.containsKey(id)) manager.pendingRestores.add(id);
+        } else if (nbt.contains("magnetBackups")) {
             net.minecraft.nbt.NbtList backupsList = nbt.getList("magnetBackups", 10);
             for (int i = 0; i < backupsList.size(); i++) {
                 net.minecraft.nbt.NbtCompound backupEntry = backupsList.getCompound(i);
@@ -275,13 +351,7 @@ public class MagneticStormManager extends PersistentState {
     }
 
     private record MagnetBackup(double radius, double forceMultiplier, boolean attracting) {
-        public net.minecraft.nbt.NbtCompound toNbt() {
-            net.minecraft.nbt.NbtCompound nbt = new net.minecraft.nbt.NbtCompound();
-            nbt.putDouble("radius", radius);
-            nbt.putDouble("forceMultiplier", forceMultiplier);
-            nbt.putBoolean("attracting", attracting);
-            return nbt;
-        }
+        // Storm states saved before backupFormat 2
         public static MagnetBackup fromNbt(net.minecraft.nbt.NbtCompound nbt) {
             return new MagnetBackup(nbt.getDouble("radius"), nbt.getDouble("forceMultiplier"), nbt.getBoolean("attracting"));
         }
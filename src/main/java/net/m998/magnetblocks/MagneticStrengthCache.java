@@ -0,0 +1,108 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.FallingBlockEntity;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.entity.mob.EndermanEntity;
+import net.minecraft.entity.passive.IronGolemEntity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.projectile.thrown.EnderPearlEntity;
+import net.minecraft.server.MinecraftServer;
+
+// Strength per entity id, recomputed only after equipment changes, whitelist edits or unload
+public class MagneticStrengthCache {
+    private static final Reference2ObjectOpenHashMap<EntityType<?>, StrengthKind> KINDS = new Reference2ObjectOpenHashMap<>();
+    private static final Int2DoubleOpenHashMap STRENGTHS = new Int2DoubleOpenHashMap();
+    static { STRENGTHS.defaultReturnValue(Double.NaN); }
+    private static long generation = 0;
+
+    public static StrengthKind getKind(Entity entity) {
+        EntityType<?> type = entity.getType();
+        StrengthKind kind = KINDS.get(type);
+        if (kind == null) {
+            kind = StrengthKind.classify(entity);
+            KINDS.put(type, kind);
+        }
+        return kind;
+    }
+
+    public static boolean isMagneticType(Entity entity) {
+        return getKind(entity) != StrengthKind.NONE;
+    }
+
+    public static double getStrength(Entity entity) {
+        StrengthKind kind = getKind(entity);
+        if (kind == StrengthKind.NONE) return 0.0;
+        if (kind == StrengthKind.ITEM) return MagnetBlockEntity.getItemStrength(((ItemEntity) entity).getStack());
+        if (!Double.isNaN(kind.constant)) return kind.constant;
+        if (entity instanceof PlayerEntity player && (player.isCreative() || player.isSpectator())) return 0.0;
+        double strength = STRENGTHS.get(entity.getId());
+        if (Double.isNaN(strength)) {
+            strength = compute(entity, kind);
+            STRENGTHS.put(entity.getId(), strength);
+        }
+        return strength;
+    }
+
+    private static double compute(Entity entity, StrengthKind kind) {
+        return switch (kind) {
+            case PLAYER -> {
+                PlayerEntity player = (PlayerEntity) entity;
+                MinecraftServer server = entity.getWorld().getServer();
+                if (server != null) {
+                    Double whitelistStrength = MagnetWhitelistManager.get(server).getPlayerStrength(player.getUuid());
+                    if (whitelistStrength != null) yield whitelistStrength;
+                }
+                yield MagnetBlockEntity.getPlayerStrength(player);
+            }
+            case LIVING -> MagnetBlockEntity.getMobEquipmentStrength((LivingEntity) entity);
+            case FALLING_BLOCK -> MagnetBlockEntity.getFallingBlockStrength((FallingBlockEntity) entity);
+            default -> 0.0;
+        };
+    }
+
+    public static void invalidate(Entity entity) {
+        STRENGTHS.remove(entity.getId());
+    }
+
+    public static void invalidateAll() {
+        STRENGTHS.clear();
+        generation++;
+    }
+
+    public static long getGeneration() {
+        return generation;
+    }
+
+    public enum StrengthKind {
+        NONE(0.0),
+        PLAYER(Double.NaN),
+        IRON_GOLEM(2.5),
+        ENDERMAN(0.5),
+        LIVING(Double.NaN),
+        ENDER_PEARL(2.5),
+        FALLING_BLOCK(Double.NaN),
+        ITEM(Double.NaN);
+
+        private final double constant;
+
+        StrengthKind(double constant) {
+            this.constant = constant;
+        }
+
+        private static StrengthKind classify(Entity entity) {
+            if (entity instanceof PlayerEntity) return PLAYER;
+            if (entity instanceof IronGolemEntity) return IRON_GOLEM;
+            if (entity instanceof EndermanEntity) return ENDERMAN;
+            if (entity instanceof LivingEntity) return LIVING;
+            if (entity instanceof EnderPearlEntity) return ENDER_PEARL;
+            if (entity instanceof FallingBlockEntity) return FALLING_BLOCK;
+            if (entity instanceof ItemEntity) return ITEM;
+            return NONE;
+        }
+    }
+}
@@ -1,20 +1,69 @@
 package net.m998.magnetblocks;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
 import net.minecraft.world.PersistentState;
+import net.minecraft.world.chunk.WorldChunk;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+// Phantom magnets are saved per world region (512x512 blocks) in their own files. This state keeps only which region holds each id.
+// A region is resident while a loaded chunk lies within one region of it, which covers the largest radius (500), and only changed regions are rewritten.
+// Chunk events never touch files: region files are read on the IO workers and taken in on the server tick, and changed regions are written
+// and let go at the next save. Only commands that need a magnet right away read its region on the server thread
 public class PhantomMagnetManager extends PersistentState {
     private static final String DATA_NAME = "magnetblocks_phantom_magnets";
+    private static final String REGION_FOLDER = "magnetblocks_phantoms";
     private static final double MAX_FORCE_MULTIPLIER = 10.0;
-    private final Map<Integer, PhantomMagnet> magnets = new HashMap<>();
+    // Region files before version 2 hold one compound per magnet, version 2 holds one array per field
+    private static final int REGION_FORMAT = 2;
+    // Resident magnets only
+    private final PhantomMagnetStore magnets = new PhantomMagnetStore();
+    private final Int2ObjectOpenHashMap<Region> regionOf = new Int2ObjectOpenHashMap<>();
+    private final Map<RegistryKey<World>, Long2ObjectOpenHashMap<Region>> regions = new HashMap<>();
+    // Loaded chunks per region, by dimension
+    private final Map<RegistryKey<World>, Long2IntOpenHashMap> loadedChunks = new HashMap<>();
+    private final IntArrayList freeIds = new IntArrayList();
     private int nextId = 1;
+    private Path regionFolder;
+    private MinecraftServer server;
+    private final List<Region> pendingReads = new ArrayList<>();
+    // A region file could not be written at the last save, the state stays dirty until one succeeds
+    private boolean saveFailed = false;
     private boolean clearConfirmation = false;
+    // Magnets added, changed or let go since the last tick, the server tick sends them to the players around (MagnetNetworking.syncPhantoms)
+    private final IntOpenHashSet changedIds = new IntOpenHashSet();
+    // Every player gets their whole list again
+    private boolean syncReset = false;
 
     public PhantomMagnetManager() {
         super();
@@ -22,47 +71,176 @@ public class PhantomMagnetManager extends PersistentState {
 
     public static PhantomMagnetManager get(MinecraftServer server) {
         ServerWorld world = server.getOverworld();
-        return world.getPersistentStateManager().getOrCreate(PhantomMagnetManager::fromNbt, PhantomMagnetManager::new, DATA_NAME);
+        PhantomMagnetManager manager = world.getPersistentStateManager().getOrCreate(PhantomMagnetManager::fromNbt, PhantomMagnetManager::new, DATA_NAME);
+        if (manager.regionFolder == null) {
+            manager.regionFolder = server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve(REGION_FOLDER);
+            manager.server = server;
+        }
+        return manager;
     }
 
-    public int createMagnet(BlockPos pos, double radius, double forceMultiplier, boolean attracting) {
-        int id = findNextAvailableId();
-        double clampedForce = Math.min(forceMultiplier, MAX_FORCE_MULTIPLIER);
-        magnets.put(id, new PhantomMagnet(pos, radius, clampedForce, attracting));
-        if (id >= nextId) nextId = id + 1;
-        this.markDirty();
-        return id;
+    // Takes in the region files that finished reading
+    public void tick() {
+        if (pendingReads.isEmpty()) return;
+        for (Iterator<Region> it = pendingReads.iterator(); it.hasNext(); ) {
+            Region region = it.next();
+            if (region.reading != null && !region.reading.isDone()) continue;
+            it.remove();
+            if (region.reading != null) finishLoad(region);
+        }
     }
 
-    private int findNextAvailableId() {
-        if (magnets.isEmpty()) return 1;
-        for (int i = 1; i <= nextId + 1; i++) {
-            if (!magnets.containsKey(i)) return i;
+    public static void onChunkLoad(ServerWorld world, WorldChunk chunk) {
+        PhantomMagnetManager manager = get(world.getServer());
+        RegistryKey<World> dimension = world.getRegistryKey();
+        ChunkPos pos = chunk.getPos();
+        Long2IntOpenHashMap counts = manager.loadedChunks.computeIfAbsent(dimension, key -> new Long2IntOpenHashMap());
+        if (counts.addTo(ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ()), 1) > 0) return;
+        Long2ObjectOpenHashMap<Region> dimensionRegions = manager.regions.get(dimension);
+        if (dimensionRegions == null) return;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                Region region = dimensionRegions.get(ChunkPos.toLong(pos.getRegionX() + dx, pos.getRegionZ() + dz));
+                if (region != null && !region.resident) manager.requestLoad(region);
+            }
         }
-        return nextId;
     }
 
-    public boolean removeMagnet(int id) {
-        boolean removed = magnets.remove(id) != null;
-        if (removed) {
-            if (id == nextId - 1) {
-                nextId = id;
-                while (nextId > 1 && !magnets.containsKey(nextId - 1)) nextId--;
+    public static void onChunkUnload(ServerWorld world, WorldChunk chunk) {
+        PhantomMagnetManager manager = get(world.getServer());
+        RegistryKey<World> dimension = world.getRegistryKey();
+        ChunkPos pos = chunk.getPos();
+        Long2IntOpenHashMap counts = manager.loadedChunks.get(dimension);
+        long key = ChunkPos.toLong(pos.getRegionX(), pos.getRegionZ());
+        if (counts == null || counts.addTo(key, -1) > 1) return;
+        counts.remove(key);
+        Long2ObjectOpenHashMap<Region> dimensionRegions = manager.regions.get(dimension);
+        if (dimensionRegions == null) return;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                Region region = dimensionRegions.get(ChunkPos.toLong(pos.getRegionX() + dx, pos.getRegionZ() + dz));
+                if (region == null || !region.resident || manager.isReached(region)) continue;
+                if (region.dirty) manager.markDirty();
+                else manager.evict(region);
             }
-            this.markDirty();
         }
-        return removed;
     }
 
-    public Map<Integer, PhantomMagnet> getMagnets() {
+    public int createMagnet(RegistryKey<World> dimension, BlockPos pos, double radius, double forceMultiplier, boolean attracting) {
+        Region region = regions.computeIfAbsent(dimension, key -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.toLong(pos.getX() >> 9, pos.getZ() >> 9), key -> new Region(dimension, pos.getX() >> 9, pos.getZ() >> 9, true));
+        if (!region.resident) load(region);
+        if (!region.resident) return -1;
+        int id = freeIds.isEmpty() ? nextId++ : freeIds.popInt();
+        magnets.put(id, dimension, pos.getX(), pos.getY(), pos.getZ(), radius, forceMultiplier, attracting);
+        region.ids.add(id);
+        region.dirty = true;
+        regionOf.put(id, region);
+        MagnetEmitterRegistry.phantomUpdated(magnets, magnets.slot(id));
+        changed(id);
+        return id;
+    }
+
+    // Magnets missing from their region file can be removed too, that is how their ids are freed
+    public boolean removeMagnet(int id) {
+        Region region = regionOf.get(id);
+        if (region == null) return false;
+        if (!region.resident) load(region);
+        if (!region.resident) return false;
+        regionOf.remove(id);
+        magnets.remove(id);
+        region.ids.remove(id);
+        region.dirty = true;
+        freeIds.add(id);
+        MagnetEmitterRegistry.phantomRemoved(id);
+        if (server != null) MagneticStormManager.get(server).onMagnetRemoved(id);
+        changed(id);
+        return true;
+    }
+
+    // Slot of the magnet when its region is resident, otherwise -1 and the region is read in the background.
+    // Regions read this way go again at the next save if nothing reaches them
+    public int residentSlot(int id) {
+        Region region = regionOf.get(id);
+        if (region == null) return -1;
+        requestLoad(region);
+        return magnets.slot(id);
+    }
+
+    public boolean hasMagnet(int id) {
+        return regionOf.containsKey(id);
+    }
+
+    // Ids of the resident magnets in ascending order
+    public int[] getResidentIds() {
+        int[] ids = new int[magnets.size()];
+        for (int slot = 0; slot < ids.length; slot++) ids[slot] = magnets.getId(slot);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    public PhantomMagnetStore getMagnets() {
         return magnets;
     }
 
+    public void magnetModified(int id) {
+        int slot = magnets.slot(id);
+        if (slot >= 0) {
+            MagnetEmitterRegistry.phantomUpdated(magnets, slot);
+            regionOf.get(id).dirty = true;
+        }
+        changed(id);
+    }
+
+    public void allMagnetsModified() {
+        for (int slot = 0; slot < magnets.size(); slot++) {
+            MagnetEmitterRegistry.phantomUpdated(magnets, slot);
+            regionOf.get(magnets.getId(slot)).dirty = true;
+            changedIds.add(magnets.getId(slot));
+        }
+        this.markDirty();
+    }
+
+    private void changed(int id) {
+        changedIds.add(id);
+        this.markDirty();
+    }
+
+    // Filled again by the next change
+    public IntOpenHashSet consumeChangedIds() {
+        if (changedIds.isEmpty()) return changedIds;
+        IntOpenHashSet changed = changedIds.clone();
+        changedIds.clear();
+        return changed;
+    }
+
+    public boolean consumeSyncReset() {
+        boolean reset = syncReset;
+        syncReset = false;
+        return reset;
+    }
+
     public void clearAllMagnets(boolean confirm) {
         if (confirm && clearConfirmation) {
             magnets.clear();
+            regionOf.clear();
+            pendingReads.clear();
+            freeIds.clear();
             nextId = 1;
+            // Emptied regions delete their files at the next save
+            for (Long2ObjectOpenHashMap<Region> dimensionRegions : regions.values()) {
+                for (Region region : dimensionRegions.values()) {
+                    region.ids.clear();
+                    region.reading = null;
+                    region.resident = true;
+                    region.dirty = true;
+                }
+            }
+            MagnetEmitterRegistry.phantomsCleared();
+            if (server != null) MagneticStormManager.get(server).onMagnetsCleared();
             clearConfirmation = false;
+            changedIds.clear();
+            syncReset = true;
             this.markDirty();
         } else {
             clearConfirmation = true;
@@ -73,82 +251,309 @@ public class PhantomMagnetManager extends PersistentState {
         return clearConfirmation;
     }
 
+    // All magnets, resident or not
     public int getMagnetCount() {
-        return magnets.size();
+        return regionOf.size();
     }
 
     public static double getMaxForceMultiplier() {
         return MAX_FORCE_MULTIPLIER;
     }
 
+    private boolean isReached(Region region) {
+        Long2IntOpenHashMap counts = loadedChunks.get(region.dimension);
+        if (counts == null) return false;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) if (counts.get(ChunkPos.toLong(region.x + dx, region.z + dz)) > 0) return true;
+        }
+        return false;
+    }
+
+    private void requestLoad(Region region) {
+        if (region.resident || region.reading != null) return;
+        File file = regionFile(region).toFile();
+        region.reading = CompletableFuture.supplyAsync(() -> read(file), Util.getIoWorkerExecutor());
+        pendingReads.add(region);
+    }
+
+    // Reads the region on the server thread, or waits for the read already running
+    private void load(Region region) {
+        if (region.resident) return;
+        requestLoad(region);
+        finishLoad(region);
+    }
+
+    // Null when the file does not exist
+    private static NbtCompound read(File file) {
+        try {
+            return file.exists() ? NbtIo.readCompressed(file) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A file that cannot be read leaves the region unloaded, the next chunk loaded near it tries again
+    private void finishLoad(Region region) {
+        CompletableFuture<NbtCompound> reading = region.reading;
+        region.reading = null;
+        NbtCompound nbt;
+        try {
+            nbt = reading.join();
+        } catch (CompletionException e) {
+            MagnetBlocksMod.LOGGER.error("Could not read phantom magnet region {}", regionFile(region), e.getCause());
+            return;
+        }
+        apply(region, nbt != null ? nbt : new NbtCompound());
+    }
+
+    // A missing file reads as empty. Ids the file does not hold stay reserved and are reported, only the remove command frees them
+    private void apply(Region region, NbtCompound nbt) {
+        IntOpenHashSet found = new IntOpenHashSet();
+        if (nbt.getInt("version") >= 2) {
+            int[] ids = nbt.getIntArray("ids");
+            long[] positions = nbt.getLongArray("positions"), radius = nbt.getLongArray("radius"), force = nbt.getLongArray("force");
+            byte[] attracting = nbt.getByteArray("attracting");
+            int count = Math.min(ids.length, Math.min(Math.min(positions.length, radius.length), Math.min(force.length, attracting.length)));
+            for (int i = 0; i < count; i++) {
+                if (regionOf.get(ids[i]) != region) continue;
+                magnets.put(ids[i], region.dimension, BlockPos.unpackLongX(positions[i]), BlockPos.unpackLongY(positions[i]), BlockPos.unpackLongZ(positions[i]),
+                        Double.longBitsToDouble(radius[i]), Double.longBitsToDouble(force[i]), attracting[i] != 0);
+                found.add(ids[i]);
+            }
+        } else {
+            NbtList magnetsList = nbt.getList("magnets", 10);
+            for (int i = 0; i < magnetsList.size(); i++) {
+                NbtCompound magnetEntry = magnetsList.getCompound(i);
+                int id = magnetEntry.getInt("id");
+                if (regionOf.get(id) != region) continue;
+                readMagnet(id, region.dimension, magnetEntry.getCompound("magnet"));
+                found.add(id);
+            }
+            // Rewritten in the current format at the next save
+            if (!found.isEmpty()) {
+                region.dirty = true;
+                markDirty();
+            }
+        }
+        if (found.size() < region.ids.size()) {
+            MagnetBlocksMod.LOGGER.warn("Phantom magnet region {} lacks {} of its {} magnets, their ids are kept", regionFile(region),
+                    region.ids.size() - found.size(), region.ids.size());
+        }
+        if (server != null && MagneticStormManager.get(server).onMagnetsLoaded(this, found)) region.dirty = true;
+        for (IntIterator it = found.iterator(); it.hasNext(); ) MagnetEmitterRegistry.phantomUpdated(magnets, magnets.slot(it.nextInt()));
+        region.resident = true;
+        changedIds.addAll(found);
+        // Changed by a storm, or read for a command or after its chunks went again: the next save writes or lets go of it
+        if (region.dirty || !isReached(region)) markDirty();
+    }
+
+    // Only for regions that match their file, changed ones are saved first
+    private void evict(Region region) {
+        for (IntIterator it = region.ids.iterator(); it.hasNext(); ) {
+            int id = it.nextInt();
+            magnets.remove(id);
+            MagnetEmitterRegistry.phantomRemoved(id);
+            changedIds.add(id);
+        }
+        region.resident = false;
+    }
+
+    private boolean save(Region region) {
+        File file = regionFile(region).toFile();
+        // Magnets missing from the file have nothing to write
+        IntArrayList present = new IntArrayList(region.ids.size());
+        for (IntIterator it = region.ids.iterator(); it.hasNext(); ) {
+            int id = it.nextInt();
+            if (magnets.slot(id) >= 0) present.add(id);
+        }
+        try {
+            if (present.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                int count = present.size();
+                int[] ids = present.toIntArray();
+                long[] positions = new long[count], radius = new long[count], force = new long[count];
+                byte[] attracting = new byte[count];
+                for (int i = 0; i < count; i++) {
+                    int slot = magnets.slot(ids[i]);
+                    positions[i] = BlockPos.asLong(magnets.getX(slot), magnets.getY(slot), magnets.getZ(slot));
+                    radius[i] = Double.doubleToRawLongBits(magnets.getRadius(slot));
+                    force[i] = Double.doubleToRawLongBits(magnets.getForceMultiplier(slot));
+                    attracting[i] = (byte) (magnets.isAttracting(slot) ? 1 : 0);
+                }
+                NbtCompound nbt = new NbtCompound();
+                nbt.putInt("version", REGION_FORMAT);
+                nbt.putIntArray("ids", ids);
+                nbt.putLongArray("positions", positions);
+                nbt.putLongArray("radius", radius);
+                nbt.putLongArray("force", force);
+                nbt.putByteArray("attracting", attracting);
+                Files.createDirectories(file.toPath().getParent());
+                NbtIo.writeCompressed(nbt, file);
+            }
+        } catch (IOException e) {
+            MagnetBlocksMod.LOGGER.error("Could not save phantom magnet region {}", file, e);
+            return false;
+        }
+        region.dirty = false;
+        return true;
+    }
+
+    private Path regionFile(Region region) {
+        Identifier dimension = region.dimension.getValue();
+        return regionFolder.resolve(dimension.getNamespace()).resolve(dimension.getPath()).resolve("r." + region.x + "." + region.z + ".dat");
+    }
+
+    private void readMagnet(int id, RegistryKey<World> dimension, NbtCompound nbt) {
+        magnets.put(id, dimension, nbt.getInt("x"), nbt.getInt("y"), nbt.getInt("z"),
+                nbt.getDouble("radius"), nbt.getDouble("forceMultiplier"), nbt.getBoolean("attracting"));
+    }
+
+    // Saving writes the changed regions, then lets go of the regions nothing reaches any more. The index only lists ids whose region
+    // file was written, the magnets of a region that failed are kept here in the format from before regions and moved back on load
     @Override
     public NbtCompound writeNbt(NbtCompound nbt) {
+        NbtList regionList = new NbtList(), magnetsList = new NbtList();
+        saveFailed = false;
+        for (Long2ObjectOpenHashMap<Region> dimensionRegions : regions.values()) {
+            for (ObjectIterator<Region> it = dimensionRegions.values().iterator(); it.hasNext(); ) {
+                Region region = it.next();
+                IntOpenHashSet indexed = region.ids;
+                if (region.resident && region.dirty && !save(region)) {
+                    saveFailed = true;
+                    indexed = new IntOpenHashSet();
+                    for (IntIterator ids = region.ids.iterator(); ids.hasNext(); ) {
+                        int id = ids.nextInt();
+                        if (magnets.slot(id) >= 0) magnetsList.add(writeMagnet(id));
+                        else indexed.add(id);
+                    }
+                } else if (region.resident && !isReached(region)) {
+                    evict(region);
+                }
+                if (region.ids.isEmpty() && !region.dirty) {
+                    it.remove();
+                    continue;
+                }
+                if (indexed.isEmpty()) continue;
+                NbtCompound regionNbt = new NbtCompound();
+                regionNbt.putString("dimension", region.dimension.getValue().toString());
+                regionNbt.putInt("x", region.x);
+                regionNbt.putInt("z", region.z);
+                regionNbt.putIntArray("ids", indexed.toIntArray());
+                regionList.add(regionNbt);
+            }
+        }
         nbt.putInt("nextId", nextId);
         nbt.putBoolean("clearConfirmation", clearConfirmation);
-        NbtList magnetsList = new NbtList();
-        for (Map.Entry<Integer, PhantomMagnet> entry : magnets.entrySet()) {
-            NbtCompound magnetNbt = new NbtCompound();
-            magnetNbt.putInt("id", entry.getKey());
-            magnetNbt.put("magnet", entry.getValue().toNbt());
-            magnetsList.add(magnetNbt);
-        }
-        nbt.put("magnets", magnetsList);
+        nbt.put("regions", regionList);
+        if (!magnetsList.isEmpty()) nbt.put("magnets", magnetsList);
         return nbt;
     }
 
+    @Override
+    public void save(File file) {
+        super.save(file);
+        if (saveFailed) markDirty();
+    }
+
+    private NbtCompound writeMagnet(int id) {
+        int slot = magnets.slot(id);
+        NbtCompound data = new NbtCompound();
+        data.putString("dimension", magnets.getDimension(slot).getValue().toString());
+        data.putInt("x", magnets.getX(slot));
+        data.putInt("y", magnets.getY(slot));
+        data.putInt("z", magnets.getZ(slot));
+        data.putDouble("radius", magnets.getRadius(slot));
+        data.putDouble("forceMultiplier", magnets.getForceMultiplier(slot));
+        data.putBoolean("attracting", magnets.isAttracting(slot));
+        NbtCompound magnetEntry = new NbtCompound();
+        magnetEntry.putInt("id", id);
+        magnetEntry.put("magnet", data);
+        return magnetEntry;
+    }
+
     public static PhantomMagnetManager fromNbt(NbtCompound nbt) {
         PhantomMagnetManager manager = new PhantomMagnetManager();
-        manager.nextId = nbt.getInt("nextId");
         manager.clearConfirmation = nbt.getBoolean("clearConfirmation");
+        manager.nextId = Math.max(1, nbt.getInt("nextId"));
+        NbtList regionList = nbt.getList("regions", 10);
+        for (int i = 0; i < regionList.size(); i++) {
+            NbtCompound regionNbt = regionList.getCompound(i);
+            Region region = manager.region(parseDimension(regionNbt.getString("dimension")), regionNbt.getInt("x"), regionNbt.getInt("z"));
+            for (int id : regionNbt.getIntArray("ids")) {
+                region.ids.add(id);
+                manager.regionOf.put(id, region);
+            }
+        }
+        // Before regions every magnet was kept in this state, they are moved to region files at the next save
         NbtList magnetsList = nbt.getList("magnets", 10);
         for (int i = 0; i < magnetsList.size(); i++) {
             NbtCompound magnetEntry = magnetsList.getCompound(i);
+            NbtCompound data = magnetEntry.getCompound("magnet");
             int id = magnetEntry.getInt("id");
-            PhantomMagnet magnet = PhantomMagnet.fromNbt(magnetEntry.getCompound("magnet"));
-            manager.magnets.put(id, magnet);
+            RegistryKey<World> dimension = data.contains("dimension") ? parseDimension(data.getString("dimension")) : World.OVERWORLD;
+            Region region = manager.region(dimension, data.getInt("x") >> 9, data.getInt("z") >> 9);
+            region.resident = true;
+            region.dirty = true;
+            region.ids.add(id);
+            manager.regionOf.put(id, region);
+            manager.readMagnet(id, dimension, data);
+            manager.markDirty();
         }
+        for (IntIterator it = manager.regionOf.keySet().iterator(); it.hasNext(); ) manager.nextId = Math.max(manager.nextId, it.nextInt() + 1);
+        // Highest first, so popping hands out the lowest free id
+        for (int id = manager.nextId - 1; id >= 1; id--) if (!manager.regionOf.containsKey(id)) manager.freeIds.add(id);
         return manager;
     }
 
+    private Region region(RegistryKey<World> dimension, int x, int z) {
+        return regions.computeIfAbsent(dimension, key -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.toLong(x, z), key -> new Region(dimension, x, z, false));
+    }
+
+    // Magnets saved before dimensions were stored belong to the Overworld
+    private static RegistryKey<World> parseDimension(String value) {
+        Identifier id = Identifier.tryParse(value);
+        return id != null ? RegistryKey.of(RegistryKeys.WORLD, id) : World.OVERWORLD;
+    }
+
+    private static class Region {
+        private final RegistryKey<World> dimension;
+        private final int x, z;
+        private final IntOpenHashSet ids = new IntOpenHashSet();
+        private boolean resident;
+        private CompletableFuture<NbtCompound> reading;
+        // Differs from the region file
+        private boolean dirty;
+
+        Region(RegistryKey<World> dimension, int x, int z, boolean resident) {
+            this.dimension = dimension;
+            this.x = x;
+            this.z = z;
+            this.resident = resident;
+        }
+    }
+
+    // Synced copy of a phantom magnet on the client, the server keeps them in PhantomMagnetStore
     public static class PhantomMagnet {
+        private final RegistryKey<World> dimension;
         private final BlockPos pos;
-        private double radius;
-        private double forceMultiplier;
-        private boolean attracting;
+        private final double radius;
+        private final double forceMultiplier;
+        private final boolean attracting;
 
-        public PhantomMagnet(BlockPos pos, double radius, double forceMultiplier, boolean attracting) {
+        public PhantomMagnet(RegistryKey<World> dimension, BlockPos pos, double radius, double forceMultiplier, boolean attracting) {
+            this.dimension = dimension;
             this.pos = pos;
             this.radius = radius;
             this.forceMultiplier = Math.min(forceMultiplier, MAX_FORCE_MULTIPLIER);
             this.attracting = attracting;
         }
 
+        public RegistryKey<World> getDimension() { return dimension; }
         public BlockPos getPos() { return pos; }
         public double getRadius() { return radius; }
         public double getForceMultiplier() { return forceMultiplier; }
         public boolean isAttracting() { return attracting; }
-
-        public void setRadius(double radius) { this.radius = radius; }
-        public void setForceMultiplier(double forceMultiplier) { this.forceMultiplier = Math.min(forceMultiplier, MAX_FORCE_MULTIPLIER); }
-        public void setAttracting(boolean attracting) { this.attracting = attracting; }
-
-        public NbtCompound toNbt() {
-            NbtCompound nbt = new NbtCompound();
-            nbt.putInt("x", pos.getX());
-            nbt.putInt("y", pos.getY());
-            nbt.putInt("z", pos.getZ());
-            nbt.putDouble("radius", radius);
-            nbt.putDouble("forceMultiplier", forceMultiplier);
-            nbt.putBoolean("attracting", attracting);
-            return nbt;
-        }
-
-        public static PhantomMagnet fromNbt(NbtCompound nbt) {
-            BlockPos pos = new BlockPos(nbt.getInt("x"), nbt.getInt("y"), nbt.getInt("z"));
-            double radius = nbt.getDouble("radius");
-            double forceMultiplier = Math.min(nbt.getDouble("forceMultiplier"), MAX_FORCE_MULTIPLIER);
-            boolean attracting = nbt.getBoolean("attracting");
-            return new PhantomMagnet(pos, radius, forceMultiplier, attracting);
-        }
     }
 }
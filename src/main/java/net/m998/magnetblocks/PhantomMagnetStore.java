@@ -0,0 +1,102 @@
+package net.m998.magnetblocks;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Resident phantom magnets in parallel arrays indexed by slot. Slots are dense: removing moves the last magnet into the hole,
+// so a slot is only valid until the next removal. Ids are handed out by PhantomMagnetManager
+public class PhantomMagnetStore {
+    // Dimensions are stored as an index into this list, a world has few of them
+    private final List<RegistryKey<World>> dimensions = new ArrayList<>();
+    private final Int2IntOpenHashMap slots = new Int2IntOpenHashMap();
+    private int size;
+    private int[] ids = new int[16];
+    private short[] dimension = new short[16];
+    private int[] x = new int[16], y = new int[16], z = new int[16];
+    private double[] radius = new double[16], force = new double[16];
+    private boolean[] attracting = new boolean[16];
+
+    public PhantomMagnetStore() {
+        slots.defaultReturnValue(-1);
+    }
+
+    void put(int id, RegistryKey<World> dimension, int x, int y, int z, double radius, double force, boolean attracting) {
+        int slot = slots.get(id);
+        if (slot < 0) {
+            if (size == ids.length) grow(size * 2);
+            slot = size++;
+            slots.put(id, slot);
+            ids[slot] = id;
+        }
+        int dimensionIndex = dimensions.indexOf(dimension);
+        if (dimensionIndex < 0) {
+            dimensionIndex = dimensions.size();
+            dimensions.add(dimension);
+        }
+        this.dimension[slot] = (short) dimensionIndex;
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.z[slot] = z;
+        this.radius[slot] = radius;
+        setForce(slot, force);
+        this.attracting[slot] = attracting;
+    }
+
+    public boolean remove(int id) {
+        int slot = slots.remove(id);
+        if (slot < 0) return false;
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            dimension[slot] = dimension[last];
+            x[slot] = x[last];
+            y[slot] = y[last];
+            z[slot] = z[last];
+            radius[slot] = radius[last];
+            force[slot] = force[last];
+            attracting[slot] = attracting[last];
+            slots.put(ids[slot], slot);
+        }
+        return true;
+    }
+
+    public void clear() {
+        slots.clear();
+        size = 0;
+    }
+
+    // -1 when there is no magnet with this id
+    public int slot(int id) { return slots.get(id); }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int getId(int slot) { return ids[slot]; }
+    public RegistryKey<World> getDimension(int slot) { return dimensions.get(dimension[slot]); }
+    public int getX(int slot) { return x[slot]; }
+    public int getY(int slot) { return y[slot]; }
+    public int getZ(int slot) { return z[slot]; }
+    public BlockPos getPos(int slot) { return new BlockPos(x[slot], y[slot], z[slot]); }
+    public double getRadius(int slot) { return radius[slot]; }
+    public double getForceMultiplier(int slot) { return force[slot]; }
+    public boolean isAttracting(int slot) { return attracting[slot]; }
+
+    public void setRadius(int slot, double radius) { this.radius[slot] = radius; }
+    public void setForce(int slot, double force) { this.force[slot] = Math.min(force, PhantomMagnetManager.getMaxForceMultiplier()); }
+    public void setAttracting(int slot, boolean attracting) { this.attracting[slot] = attracting; }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        dimension = Arrays.copyOf(dimension, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        force = Arrays.copyOf(force, capacity);
+        attracting = Arrays.copyOf(attracting, capacity);
+    }
+}
@@ -0,0 +1,91 @@
+package net.m998.magnetblocks;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Same math as MagneticForceKernel on a lane of entries at a time: sums stay in registers while the emitters of the group are walked,
+// and are stored once per lane block. Falloff is read from the scalar table per lane, so the results match the scalar kernel exactly.
+// Built from the vector source set and only loaded by MagneticFieldSnapshot when the JVM has the incubator module
+final class MagneticVectorKernel implements MagneticFieldSnapshot.ForceKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final ThreadLocal<double[]> LANES = ThreadLocal.withInitial(() -> new double[SPECIES.length()]);
+
+    MagneticVectorKernel() {}
+
+    @Override
+    public void compute(MagneticFieldSnapshot s, int emitterFrom, int emitterTo, int entryFrom, int entryTo) {
+        int upper = entryFrom + SPECIES.loopBound(entryTo - entryFrom);
+        double[] lanes = LANES.get();
+        for (int entry = entryFrom; entry < upper; entry += SPECIES.length()) lanes(s, emitterFrom, emitterTo, entry, lanes);
+        if (upper < entryTo) s.computeScalar(emitterFrom, emitterTo, upper, entryTo);
+    }
+
+    private static void lanes(MagneticFieldSnapshot s, int emitterFrom, int emitterTo, int entry, double[] lanes) {
+        DoubleVector px = DoubleVector.fromArray(SPECIES, s.entryX, entry);
+        DoubleVector py = DoubleVector.fromArray(SPECIES, s.entryY, entry);
+        DoubleVector pz = DoubleVector.fromArray(SPECIES, s.entryZ, entry);
+        DoubleVector strength = DoubleVector.fromArray(SPECIES, s.strength, entry);
+        VectorMask<Double> players = VectorMask.fromArray(SPECIES, s.player, entry);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector ix = zero, iy = zero, iz = zero, strongest = zero;
+        VectorMask<Double> strongestAttracting = SPECIES.maskAll(false), phantomHit = SPECIES.maskAll(false);
+        for (int emitter = emitterFrom; emitter < emitterTo; emitter++) {
+            boolean attracting = s.attracting[emitter];
+            double range = s.range[emitter];
+            DoubleVector dx = px.neg().add(s.emitterX[emitter]), dy = py.neg().add(s.emitterY[emitter]), dz = pz.neg().add(s.emitterZ[emitter]);
+            DoubleVector ox = dx.abs().sub(s.halfX[emitter]).max(0.0);
+            DoubleVector oy = dy.abs().sub(s.halfY[emitter]).max(0.0);
+            DoubleVector oz = dz.abs().sub(s.halfZ[emitter]).max(0.0);
+            DoubleVector outsideSquared = ox.mul(ox).add(oy.mul(oy)).add(oz.mul(oz));
+            DoubleVector distanceSquared = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+            VectorMask<Double> inRange = outsideSquared.compare(VectorOperators.LE, range * range).and(distanceSquared.compare(VectorOperators.GT, 0.0));
+            if (!inRange.anyTrue()) continue;
+
+            DoubleVector inverseDistance = DoubleVector.broadcast(SPECIES, attracting ? 1.0 : -1.0).div(distanceSquared.blend(1.0, inRange.not()).sqrt());
+            DoubleVector dirX = dx.mul(inverseDistance), dirY = dy.mul(inverseDistance), dirZ = dz.mul(inverseDistance);
+            outsideSquared.sqrt().div(range).intoArray(lanes, 0);
+            for (int lane = 0; lane < lanes.length; lane++) lanes[lane] = inRange.laneIsSet(lane) ? MagneticForceKernel.falloff(lanes[lane]) : 0.0;
+            DoubleVector magnitude = DoubleVector.fromArray(SPECIES, lanes, 0).mul(s.force[emitter]).mul(strength);
+            VectorMask<Double> movingPlayers = players.and(inRange);
+            if (movingPlayers.anyTrue()) magnitude = magnitude.mul(playerMovementFactor(s, entry, movingPlayers, dirX, dirY, dirZ, attracting));
+            magnitude = zero.blend(magnitude, inRange);
+
+            ix = ix.add(dirX.mul(magnitude));
+            iy = iy.add(dirY.mul(magnitude));
+            iz = iz.add(dirZ.mul(magnitude));
+            DoubleVector magnitudeSquared = magnitude.mul(magnitude);
+            VectorMask<Double> stronger = magnitudeSquared.compare(VectorOperators.GT, strongest);
+            strongest = strongest.blend(magnitudeSquared, stronger);
+            strongestAttracting = attracting ? strongestAttracting.or(stronger) : strongestAttracting.andNot(stronger);
+            VectorMask<Double> hit = magnitudeSquared.compare(VectorOperators.GT, 0.0);
+            if (!hit.anyTrue()) continue;
+            if (s.phantom[emitter]) phantomHit = phantomHit.or(hit);
+            // Every writer stores true, and the pool join publishes it to the server thread
+            s.contributed[emitter] = true;
+        }
+        ix.intoArray(s.impulseX, entry);
+        iy.intoArray(s.impulseY, entry);
+        iz.intoArray(s.impulseZ, entry);
+        strongest.intoArray(s.strongest, entry);
+        strongestAttracting.intoArray(s.strongestAttracting, entry);
+        phantomHit.intoArray(s.phantomHit, entry);
+    }
+
+    // Lanewise version of the player movement factor, 1 for lanes that are not moving players
+    private static DoubleVector playerMovementFactor(MagneticFieldSnapshot s, int entry, VectorMask<Double> players,
+                                                     DoubleVector dirX, DoubleVector dirY, DoubleVector dirZ, boolean attracting) {
+        DoubleVector vx = DoubleVector.fromArray(SPECIES, s.velocityX, entry);
+        DoubleVector vy = DoubleVector.fromArray(SPECIES, s.velocityY, entry);
+        DoubleVector vz = DoubleVector.fromArray(SPECIES, s.velocityZ, entry);
+        DoubleVector speedSquared = vx.mul(vx).add(vy.mul(vy)).add(vz.mul(vz));
+        VectorMask<Double> moving = players.and(speedSquared.compare(VectorOperators.GE, 0.0001));
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        if (!moving.anyTrue()) return one;
+        DoubleVector dotProduct = vx.mul(dirX).add(vy.mul(dirY)).add(vz.mul(dirZ)).div(speedSquared.blend(1.0, moving.not()).sqrt());
+        DoubleVector factor = one.blend(attracting ? 1.5 : 0.5, dotProduct.compare(VectorOperators.GT, 0.3))
+                .blend(attracting ? 0.7 : 1.5, dotProduct.compare(VectorOperators.LT, -0.3));
+        return one.blend(factor, moving);
+    }
+}